@@ -222,11 +222,12 @@ public class BasicDoubleLinkedList <T> implements Iterable<T>{
 	}
 	
 	/**
-	 * Convert the list to an ArrayList of the same type
+	 * Convert the list to an ArrayList of the same type. The ArrayList is sized to the list up front, so it never
+	 * has to grow
 	 * @return an ArrayList of all elements in the BasicDoubleLinkedList
 	 */
 	public ArrayList<T> toArrayList() {
-		ArrayList<T> array = new ArrayList<>();
+		ArrayList<T> array = new ArrayList<>(nodeCount);
 		
 		//If the list is empty, return null
 		if(getSize() == 0) return array;
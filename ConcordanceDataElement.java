@@ -3,50 +3,53 @@ import java.util.LinkedList;
 public class ConcordanceDataElement implements Comparable<ConcordanceDataElement>{
 
 	private String word;
-	private int[] occurrences;
-	private int nextIndex;
+	private PostingsList occurrences;
 	
 	public ConcordanceDataElement(String word) {
-		this.word = word.toLowerCase();
-		occurrences = new int[1];
-		nextIndex = 0;
+		this.word = TermNormalizer.lowerCase(word);
+		occurrences = new PostingsList();
+	}
+	
+	/**
+	 * Create a ConcordanceDataElement over existing page numbers, which are shared rather than copied
+	 * @param word the word, already lower-cased
+	 * @param occurrences the page numbers of the word
+	 */
+	ConcordanceDataElement(String word, PostingsList occurrences) {
+		this.word = word;
+		this.occurrences = occurrences;
 	}
 	
 	public ConcordanceDataElement(String word, int line) {
-		this.word = word.toLowerCase();
-		occurrences = new int[1];
-		occurrences[0] = line;
-		nextIndex = 1;
+		this.word = TermNormalizer.lowerCase(word);
+		occurrences = new PostingsList();
+		occurrences.add(line);
 	}
 	
 	/**
-	 * Add a new page number to the ConcordanceDateElement
+	 * Add a new page number to the ConcordanceDateElement. Page numbers that are already present are ignored
 	 * @param page the page number to be added
 	 */
 	public void addPage(int page) {
-		
-		//Check if the page number is new to the list. If so, add it to the list
-		if (isUnique(page)) {
-			
-			//Check if the occurrences array is full. If so, expand it
-			if (this.isFull()) expand();
-			
-			//The occurrences array should be sorted in ascending order.
-			//If the last item in occurrences is lower than the page to be added, we can add the
-			//new page at the end
-			if (occurrences[nextIndex - 1] < page) {
-				expand();
-				occurrences[nextIndex] = page;
-			}
-			//Otherwise, insert the page in sorted order
-			else insert(page);
-			
-			//Increment the nextIndex counter to point to the next open index
-			nextIndex++;
-		}
-		
-		//If the new page fails the isUnique test, method returns
-		else return;
+		occurrences.add(page);
+	}
+	
+	/**
+	 * Add every page number of another ConcordanceDataElement to this one, shifted by an offset.
+	 * Used to combine partial concordances built over consecutive blocks of lines
+	 * @param other the CDE whose page numbers are added
+	 * @param pageOffset the amount added to each of the other CDE's page numbers
+	 */
+	public void addAll(ConcordanceDataElement other, int pageOffset) {
+		occurrences.addAll(other.occurrences, pageOffset);
+	}
+	
+	/**
+	 * Compress this CDE's page numbers into their compact encoded form. Use once no more pages are expected;
+	 * adding a page afterwards expands them again
+	 */
+	public void freeze() {
+		occurrences.freeze();
 	}
 	
 	/**
@@ -69,15 +72,29 @@ public class ConcordanceDataElement implements Comparable<ConcordanceDataElement
 		//Create an empty list for returning
 		LinkedList<Integer> returnList = new LinkedList<>();
 		
-		//Append each occurrence page number to the return list
-		for (int page : occurrences) {
-			returnList.add(page);
-		}
+		//Append each occurrence page number to the return list, straight from the stored page numbers
+		occurrences.forEachLine(returnList::add);
 		
 		//Return the populated list
 		return returnList;
 	}
 	
+	/**
+	 * Get the number of distinct pages on which this CDE's word occurs
+	 * @return the number of page numbers held
+	 */
+	public int getPageCount() {
+		return occurrences.size();
+	}
+	
+	/**
+	 * Get the number of times this CDE's word occurs, counting each repeat on the same page
+	 * @return the number of occurrences
+	 */
+	public long getOccurrenceCount() {
+		return occurrences.getOccurrenceCount();
+	}
+	
 	/**
 	 * Get this ConcordanceDataElement's word parameter
 	 * @return the CDE's word
@@ -92,7 +109,7 @@ public class ConcordanceDataElement implements Comparable<ConcordanceDataElement
 	 * @return the hash code for this object as an integer
 	 */
 	public int hashCode() {
-		return (word.hashCode() < 0 ? word.hashCode() * -1 : word.hashCode()); //Force a positive number return
+		return word.hashCode() & Integer.MAX_VALUE; //Force a positive number return. Masking also works for Integer.MIN_VALUE
 		
 		/*
 		 * commenting all this out as per instructions I can use the String hashcode
@@ -120,82 +137,13 @@ public class ConcordanceDataElement implements Comparable<ConcordanceDataElement
 	 */
 	@Override
 	public String toString() {
-		//Generate the return string
-		String returnString = word + ":";
-		
-		//Append each page that the word appears on
-		for (int i = 0; i < occurrences.length; i ++) {
-			returnString += " " + occurrences[i] + ",";
-		}
-		
-		//Remove the trailing comma following the final iteration of the for loop
-		returnString = returnString.substring(0, returnString.length() - 1);
+		//Generate the return string: the word, then each page that the word appears on
+		StringBuilder returnString = new StringBuilder(word.length() + 2 + occurrences.size() * 6);
+		returnString.append(word).append(": ");
+		occurrences.appendTo(returnString);
 		
 		//Return the formatted String
-		return returnString;
-	}
-	
-	/**
-	 * Check if a page number is unique in the occurrences list
-	 * @param num the page number to be checked
-	 * @return true if the page number does not already occur in the occurrences list, and false otherwise
-	 */
-	private boolean isUnique(int num) {
-		
-		for (int i = 0; i < nextIndex; i++) {
-			if (num == occurrences[i]) return false;
-		}
-		
-		return true;
-	}
-	
-	/**
-	 * Check if the occurrences array is currently full
-	 * @return true if there is no more room in the occurrences array, and false otherwise
-	 */
-	private boolean isFull() {
-		
-		if (nextIndex == occurrences.length - 1) return true;
-		
-		else return false;
-	}
-	
-	/**
-	 * Expand the size of the occurrences array if it becomes full.
-	 * The new occurrences array has five more available indices than the previous one.
-	 */
-	private void expand() {	
-		
-		//Create a new empty array
-		int[] newArray = new int[occurrences.length + 1];
-		for (int i = 0; i < occurrences.length; i++) {
-			
-			//Copy the integers from the occurrences array to the new array
-			newArray[i] = occurrences[i];
-		}
-		
-		//Assign the new array as the new occurrences array
-		occurrences = newArray;
-	}
-	
-	/**
-	 * Insert an integer into the occurrences array in sorted order
-	 * @param num the integer to be added
-	 */
-	private void insert(int num) {
-		//iterate through the occurrences array to find the first integer greater than the to-add integer
-		for (int i = 0; i < nextIndex; i++) {
-			if (occurrences[i] > num) {
-				
-				//Promote all the following integers to their next index to make room for the to-add integer
-				for (int j = nextIndex; j > i; j--) {
-					occurrences[j] = occurrences[j-1];
-				}
-				
-				//Insert the to-add integer in the opened index
-				occurrences[i] = num;
-			}
-		}
+		return returnString.toString();
 	}
 	
 }
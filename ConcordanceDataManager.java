@@ -1,11 +1,185 @@
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ConcordanceDataManager implements ConcordanceDataManagerInterface {
 
+	//Starting estimate for a new CDS. The table grows on its own, so this only needs to be a reasonable floor
+	private static final int INITIAL_WORD_ESTIMATE = 1024;
+	
+	//Size of the character buffer used when streaming a file
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	
+	//Smallest block of characters that a parallel build will hand to a single worker
+	private static final int MIN_PARALLEL_CHUNK = 1 << 16;
+	
+	//Number of blocks per worker a parallel build aims for, so idle workers can steal remaining blocks
+	private static final int CHUNKS_PER_WORKER = 4;
+	
+	//Number of files a directory build reads at once unless told otherwise
+	private static final int DEFAULT_IO_PARALLELISM = 32;
+	
+	//Largest file a directory build reads into memory. Larger files are memory-mapped as they are tokenized
+	private static final long MAX_READ_SIZE = 1 << 26;
+	
+	//Number of worker threads used by createConcordanceArray and for tokenizing a directory. 1 builds on the
+	//calling thread
+	private int parallelism = 1;
+	
+	//Number of files a directory build may have read but not yet indexed
+	private int ioParallelism = DEFAULT_IO_PARALLELISM;
+	
+	//Filter applied to every CDS this manager builds
+	private StopWordFilter stopWordFilter = StopWordFilter.DEFAULT;
+	
+	//Normalizer of every CDS this manager builds
+	private TermNormalizer termNormalizer = TermNormalizer.DEFAULT;
+	
+	//Hash function of every CDS this manager builds
+	private TermHashFunction hashFunction = TermDictionary.DEFAULT_HASH_FUNCTION;
+	
+	//Approximate counter receiving every term of every build, or null
+	private SpaceSavingCounter termCounter;
+	
+	//Bytes a createConcordanceFile build may hold in the heap before spilling to disk, or 0 for no limit
+	private long heapBudget;
+	
+	//Directory for the run files of a spilling build, or null for the default temporary directory
+	private File spillDirectory;
+	
+	//Whether input files are memory-mapped and tokenized as UTF-8 bytes instead of streamed through a Reader
+	private boolean memoryMapped;
+	
+	//Metrics of the most recent build, reset as each build starts
+	private final ConcordanceStats stats = new ConcordanceStats();
+	
+	/**
+	 * Get the metrics of this manager's most recent build. The same object is reused for every build, so it
+	 * can be registered over JMX once with ConcordanceStats.register
+	 * @return the stats
+	 */
+	public ConcordanceStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Choose how createConcordanceFile reads its input. Memory-mapped mode scans the raw bytes of the file,
+	 * which avoids character decoding for ASCII text and handles files larger than 2 GB. It always reads the
+	 * file as UTF-8, while the default mode uses the platform charset
+	 * @param memoryMapped true to memory-map input files, false to stream them through a Reader
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+	
+	/**
+	 * Limit the heap createConcordanceFile may use for its concordance. Whenever the concordance is estimated to
+	 * take more than the budget, its terms are written to a sorted run file on disk and the build continues with
+	 * an empty table. The runs are merged into the output file at the end, which is identical to an in-memory
+	 * build. The budget covers the terms and their line numbers, not the fixed buffers of reading and writing
+	 * @param heapBudget the budget in bytes, or 0 to build in memory without a limit
+	 * @throws IllegalArgumentException if heapBudget is negative
+	 */
+	public void setHeapBudget(long heapBudget) {
+		if (heapBudget < 0) throw new IllegalArgumentException("Heap budget must not be negative");
+		this.heapBudget = heapBudget;
+	}
+	
+	/**
+	 * Set the directory for the run files of a build that exceeds its heap budget
+	 * @param spillDirectory the directory, or null for the default temporary directory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+	
+	/**
+	 * Set the filter deciding which words are left out of the concordances this manager builds
+	 * @param stopWordFilter the stop words and minimum word length to apply
+	 */
+	public void setStopWordFilter(StopWordFilter stopWordFilter) {
+		this.stopWordFilter = stopWordFilter;
+	}
+	
+	/**
+	 * Set the normalizer that turns words into terms in the concordances this manager builds
+	 * @param termNormalizer the normalizer, for example TermNormalizer.NFC to compose accented letters
+	 */
+	public void setTermNormalizer(TermNormalizer termNormalizer) {
+		this.termNormalizer = termNormalizer;
+	}
+	
+	/**
+	 * Set the function that hashes terms in the concordances this manager builds. HashQualityReport shows how
+	 * evenly each function spreads the terms of a sample of the input
+	 * @param hashFunction the hash function, for example StandardTermHash.XXHASH
+	 */
+	public void setHashFunction(TermHashFunction hashFunction) {
+		this.hashFunction = hashFunction;
+	}
+	
+	/**
+	 * Pass every term of the concordances this manager builds to an approximate counter as well. The counter can
+	 * be read from another thread while a build is running to follow the most frequent terms so far
+	 * @param termCounter the counter, or null to stop counting
+	 */
+	public void setTermCounter(SpaceSavingCounter termCounter) {
+		this.termCounter = termCounter;
+	}
+	
+	/**
+	 * Set how many worker threads createConcordanceArray uses. With more than one worker the input is split
+	 * into blocks of whole lines, each block is indexed into its own CDS on a ForkJoinPool, and the partial
+	 * results are merged. The output is identical to a single-threaded build
+	 * @param parallelism the number of worker threads, for example Runtime.getRuntime().availableProcessors()
+	 * @throws IllegalArgumentException if parallelism is less than 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Set how many files a directory build reads at once. Each read blocks its own thread, so this can be set to
+	 * the number of requests the storage serves well in parallel, well above the number of cores. It also bounds
+	 * the number of files held in memory between being read and being tokenized
+	 * @param ioParallelism the number of concurrent reads
+	 * @throws IllegalArgumentException if ioParallelism is less than 1
+	 */
+	public void setIoParallelism(int ioParallelism) {
+		if (ioParallelism < 1) throw new IllegalArgumentException("I/O parallelism must be at least 1");
+		this.ioParallelism = ioParallelism;
+	}
+	
 	/**
 	 * Display the words of a concordance in alphabetical order, with one word per line
 	 * @param input a String (one line, or multiple) from which to create a concordance
@@ -15,34 +189,36 @@ public class ConcordanceDataManager implements ConcordanceDataManagerInterface {
 	@Override
 	public ArrayList<String> createConcordanceArray(String input) {
 		
-		//Create scanner and variables
-		Scanner scanner = new Scanner(input); //Scanner to read file
-		String[] tokens; //Array to hold the line split into tokens
-		int lineCounter = 1; //Counter to track number of read lines
+		ConcordanceDataStructure cds;
+		stats.reset();
+		long start = System.nanoTime();
 		
-		//Check number of lines to estimate starting CDS size
-		String[] wordCount = input.split("\\s+");
-		
-		//Create CDS to process data
-		ConcordanceDataStructure cds = new ConcordanceDataStructure(wordCount.length);
-		
-		while(scanner.hasNextLine()) { //Read the line in entirety
-			tokens = scanner.nextLine().split(" "); //Create a String array of each word in the line
-			for (String token : tokens) {
-				cds.add(token, lineCounter); //Add each word individually to the CDS
+		//Build on the calling thread, or split the input into blocks of lines and build them on a pool
+		if (parallelism == 1 || input.length() < MIN_PARALLEL_CHUNK * 2) {
+			cds = newStructure();
+			cds.setStats(stats);
+			addLines(input, 0, input.length(), cds);
+		}
+		else {
+			int chunkSize = Math.max(MIN_PARALLEL_CHUNK, input.length() / (parallelism * CHUNKS_PER_WORKER));
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				cds = pool.invoke(new BuildTask(input, 0, input.length(), chunkSize, this::newStructure, stats)).cds;
+				cds.setStats(stats);
+			}
+			finally {
+				pool.shutdown();
 			}
-			lineCounter++; //Increment the line counter to track to the next line
 		}
-		
-		//Close scanner at end of file
-		scanner.close();
+		stats.recordPhase(ConcordanceStats.Phase.TOKENIZE, start);
 		
 		//Convert the cds to an ArrayList<String> for returning
 		return cds.showAll();
 	}
 
 	/**
-	 * Read a text file, create a concordance from it, and then create a file holding the concordance output
+	 * Read a text file, create a concordance from it, and then create a file holding the concordance output.
+	 * The file is streamed line by line into the concordance, so its full contents are never held in memory
 	 * @param input the file to be read (.txt format)
 	 * @param output the name and filepath for the output file
 	 * @return true if the operation was successful, false if not
@@ -51,41 +227,510 @@ public class ConcordanceDataManager implements ConcordanceDataManagerInterface {
 	@Override
 	public boolean createConcordanceFile(File input, File output) throws FileNotFoundException {
 		
-		//Create a String to hold file contents
-		String fileContents = "";
+		//Create CDS to process data
+		ConcordanceDataStructure cds = newStructure();
+		stats.reset();
+		cds.setStats(stats);
 		
-		try {
-			//Open scanner to read file
-			Scanner scanner = new Scanner(input);
+		//With a heap budget, terms pass through a builder that spills the CDS to disk whenever it grows too large
+		try (ExternalConcordanceBuilder builder = heapBudget > 0
+				? new ExternalConcordanceBuilder(cds, heapBudget, spillDirectory) : null) {
+			ConcordanceTermSink sink = builder != null ? builder : cds;
 			
-			//Read each line into the string
-			while (scanner.hasNextLine()) {
-				fileContents += scanner.nextLine() + "\n"; 
+			try {
+				//Either map the file and tokenize its bytes, or stream it line by line
+				if (memoryMapped) {
+					long start = System.nanoTime();
+					new MappedFileIngester().ingest(input, sink);
+					stats.recordPhase(ConcordanceStats.Phase.TOKENIZE, start);
+				}
+				else addLines(input, sink);
+			}
+			catch(NoSuchFileException e) {
+				throw new FileNotFoundException("The specified file was not found");
+			}
+			catch(IOException | UncheckedIOException e) {
+				return false;
 			}
 			
-			//Close scanner at end of file
-			scanner.close();
+			//Write the sorted concordance straight into the output file
+			try (ConcordanceWriter writer = new ConcordanceWriter(new FileOutputStream(output), Charset.defaultCharset())) {
+				if (builder != null) builder.writeAll(writer);
+				else cds.writeAll(writer);
+			}
+			catch(FileNotFoundException e) {
+				throw e;
+			}
+			catch(IOException e) {
+				return false;
+			}
+		}
+		
+		//Return true on successful completion
+		return true;
+	}
+	
+	/**
+	 * Build one concordance over every file in a directory and its subdirectories that matches a glob pattern.
+	 * Each file is a document, named by its path relative to the directory with '/' separators, and numbered in
+	 * order of those paths. Files are read as UTF-8, as in memory-mapped mode.
+	 *
+	 * Files are read concurrently, up to the I/O parallelism at a time, on virtual threads where the Java runtime
+	 * has them and on a cached thread pool otherwise. Each file read is tokenized into its own CDS on a fixed pool
+	 * of parallelism worker threads, and folded into a partial concordance held by that worker. The partial
+	 * concordances are merged at the end, so the result does not depend on the order the reads finish in
+	 * @param directory the directory to search
+	 * @param glob a glob pattern matched against each file's path relative to the directory, for example
+	 * "**.txt", or null to take every file
+	 * @return the concordance of every matching file
+	 * @throws NoSuchFileException if the directory does not exist
+	 * @throws IOException if the directory cannot be searched or a file cannot be read
+	 */
+	public MultiDocumentConcordance createDirectoryConcordance(File directory, String glob) throws IOException {
+		stats.reset();
+		stats.trackDocuments();
+		long start = System.nanoTime();
+		
+		//Number the documents in path order before reading any of them
+		List<Path> files = listDocuments(directory.toPath(), glob);
+		DocumentTable documentTable = new DocumentTable();
+		for (Path file : files) {
+			documentTable.add(directory.toPath().relativize(file).toString().replace(File.separatorChar, '/'));
+		}
+		stats.recordPhase(ConcordanceStats.Phase.READ, start);
+		
+		//Each worker holds at most one partial concordance at a time, so there are never more than parallelism
+		ConcurrentLinkedQueue<MultiDocumentConcordance> shards = new ConcurrentLinkedQueue<>();
+		Semaphore unindexed = new Semaphore(ioParallelism);
+		AtomicBoolean failed = new AtomicBoolean();
+		ExecutorService readers = newReaderExecutor();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		try {
+			ArrayList<CompletableFuture<Void>> pending = new ArrayList<>(files.size());
+			for (int document = 0; document < files.size(); document++) {
+				
+				//Wait for a file to be indexed before reading another, and stop reading once one has failed
+				try {
+					unindexed.acquire();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading " + directory);
+				}
+				if (failed.get()) {
+					unindexed.release();
+					break;
+				}
+				
+				int id = document;
+				Path file = files.get(document);
+				pending.add(CompletableFuture.supplyAsync(() -> readDocument(file), readers)
+						.thenAcceptAsync(bytes -> indexDocument(id, file, bytes, documentTable, shards), workers)
+						.whenComplete((result, failure) -> {
+							if (failure != null) failed.set(true);
+							unindexed.release();
+						}));
+			}
+			CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch(CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+		finally {
+			readers.shutdownNow();
+			workers.shutdownNow();
+		}
+		
+		//Fold the partial concordances together
+		long mergeStart = System.nanoTime();
+		MultiDocumentConcordance concordance = shards.poll();
+		if (concordance == null) concordance = new MultiDocumentConcordance(documentTable, hashFunction, termNormalizer);
+		for (MultiDocumentConcordance shard; (shard = shards.poll()) != null; ) {
+			concordance.merge(shard);
+		}
+		stats.recordPhase(ConcordanceStats.Phase.INDEX, mergeStart);
+		stats.track(concordance);
+		
+		return concordance;
+	}
+	
+	/**
+	 * Build one concordance over the matching files of a directory, as createDirectoryConcordance does, and
+	 * write it to a file. Each word is listed once, with the documents it occurs in and its lines within each
+	 * @param directory the directory to search
+	 * @param glob a glob pattern matched against each file's path relative to the directory, or null to take
+	 * every file
+	 * @param output the name and filepath for the output file
+	 * @return true if the operation was successful, false if not
+	 * @throws FileNotFoundException if the specified directory was not found
+	 */
+	public boolean createDirectoryConcordanceFile(File directory, String glob, File output) throws FileNotFoundException {
+		MultiDocumentConcordance concordance;
+		try {
+			concordance = createDirectoryConcordance(directory, glob);
+		}
+		catch(NoSuchFileException e) {
+			throw new FileNotFoundException("The specified directory was not found");
+		}
+		catch(IOException e) {
+			return false;
+		}
+		
+		try (ConcordanceWriter writer = new ConcordanceWriter(new FileOutputStream(output), Charset.defaultCharset())) {
+			long start = System.nanoTime();
+			concordance.writeAll(writer);
+			stats.recordPhase(ConcordanceStats.Phase.WRITE, start);
 		}
 		catch(FileNotFoundException e) {
+			throw e;
+		}
+		catch(IOException e) {
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Index a text file into a concordance index file, replacing any index already there. Only complete lines
+	 * are indexed: a final line without a line terminator may still be growing, so it is left for a later
+	 * append. The input is read as UTF-8, as in memory-mapped mode
+	 * @param input the file to be read
+	 * @param index the index file to write
+	 * @return the number of lines indexed
+	 * @throws FileNotFoundException if the specified input file was not found
+	 * @throws IOException if the input cannot be read or the index cannot be written
+	 */
+	public int createConcordanceIndex(File input, File index) throws IOException {
+		return indexLines(input, new ConcordanceIndexFile(index), null);
+	}
+	
+	/**
+	 * Index the complete lines added to a text file since its index was last written, and append them to the
+	 * index as a delta segment. Only the bytes after the last indexed line are read, so the cost grows with the
+	 * new text rather than with the whole file. If the index does not exist yet the whole file is indexed. New
+	 * lines are normalized with the normalizer the index was built with
+	 * @param input the file to be read, which must only have grown since it was indexed
+	 * @param index the index file to update
+	 * @return the number of lines added to the index
+	 * @throws FileNotFoundException if the specified input file was not found
+	 * @throws IOException if the input has shrunk, or a file cannot be read or written
+	 */
+	public int appendToConcordanceIndex(File input, File index) throws IOException {
+		ConcordanceIndexFile indexFile = new ConcordanceIndexFile(index);
+		return indexLines(input, indexFile, indexFile.exists() ? indexFile.getLastSegment() : null);
+	}
+	
+	/**
+	 * Load every segment of a concordance index file into a new CDS. The CDS uses this manager's stop word
+	 * filter and the index's normalizer for any words added to it later
+	 * @param index the index file to read
+	 * @return a CDS holding every indexed term and its lines
+	 * @throws IOException if the index cannot be read or is not a valid index
+	 */
+	public ConcordanceDataStructure loadConcordanceIndex(File index) throws IOException {
+		ConcordanceDataStructure cds = newStructure();
+		stats.reset();
+		cds.setStats(stats);
+		
+		long start = System.nanoTime();
+		ConcordanceIndexFile indexFile = new ConcordanceIndexFile(index);
+		cds.setTermNormalizer(indexFile.getTermNormalizer());
+		indexFile.loadInto(cds);
+		stats.recordPhase(ConcordanceStats.Phase.READ, start);
+		return cds;
+	}
+	
+	/**
+	 * Merge the delta segments of a concordance index file into a single segment
+	 * @param index the index file to compact
+	 * @throws IOException if the index cannot be read or written, or is not a valid index
+	 */
+	public void compactConcordanceIndex(File index) throws IOException {
+		new ConcordanceIndexFile(index).compact();
+	}
+	
+	/**
+	 * Index the complete lines of a file that follow the last segment of an index, and save them
+	 * @param input the file to be read
+	 * @param indexFile the index to write or append to
+	 * @param last the last segment of the index, or null to index the whole file into a new index
+	 * @return the number of lines indexed
+	 * @throws IOException if a file cannot be read or written
+	 */
+	private int indexLines(File input, ConcordanceIndexFile indexFile, ConcordanceIndexFile.Segment last) throws IOException {
+		long start = last == null ? 0 : last.getInputOffset();
+		int firstLine = last == null ? 1 : last.getLastLine() + 1;
+		
+		//Appended lines are normalized the way the lines already indexed were, whatever this manager's normalizer
+		ConcordanceDataStructure cds = newStructure();
+		if (last != null) cds.setTermNormalizer(indexFile.getTermNormalizer());
+		stats.reset();
+		cds.setStats(stats);
+		int lastLine;
+		long end;
+		
+		try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < start) throw new IOException("The input file is shorter than the indexed text");
+			
+			//Index up to the end of the last complete line
+			long tokenizeStart = System.nanoTime();
+			end = MappedFileIngester.endOfLastLine(channel, start);
+			lastLine = new MappedFileIngester().ingest(channel, start, end, cds, firstLine);
+			stats.recordPhase(ConcordanceStats.Phase.TOKENIZE, tokenizeStart);
+		}
+		catch(NoSuchFileException e) {
 			throw new FileNotFoundException("The specified file was not found");
 		}
 		
-		//Convert input String into a concordance ArrayList
-		ArrayList<String> concordance = createConcordanceArray(fileContents);
+		long writeStart = System.nanoTime();
+		if (last == null) indexFile.write(cds, firstLine, lastLine, end);
+		else if (end > start) indexFile.append(cds, firstLine, lastLine, end);
+		stats.recordPhase(ConcordanceStats.Phase.WRITE, writeStart);
+		
+		return lastLine - firstLine + 1;
+	}
+	
+	/**
+	 * Create an empty CDS for a build, with this manager's hash function, stop word filter, normalizer and term
+	 * counter
+	 * @return the new CDS
+	 */
+	private ConcordanceDataStructure newStructure() {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(INITIAL_WORD_ESTIMATE, hashFunction);
+		cds.setStopWordFilter(stopWordFilter);
+		cds.setTermNormalizer(termNormalizer);
+		cds.setTermCounter(termCounter);
+		return cds;
+	}
+	
+	/**
+	 * Find the files of a directory and its subdirectories whose relative paths match a glob pattern
+	 * @param directory the directory to search
+	 * @param glob the glob pattern, or null to match every file
+	 * @return the matching regular files in path order
+	 * @throws IOException if the directory cannot be searched
+	 */
+	private static List<Path> listDocuments(Path directory, String glob) throws IOException {
+		PathMatcher matcher = glob == null ? null : directory.getFileSystem().getPathMatcher("glob:" + glob);
+		
+		try (Stream<Path> paths = Files.walk(directory)) {
+			return paths.filter(Files::isRegularFile)
+					.filter(path -> matcher == null || matcher.matches(directory.relativize(path)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+	
+	/**
+	 * Create the executor that reads the files of a directory build. Virtual threads are used where the Java
+	 * runtime has them, so a blocked read costs no platform thread. They are looked up reflectively, so older
+	 * runtimes fall back to a cached pool. The number of reads running is bounded by the caller either way
+	 * @return a new executor running each task on its own thread
+	 */
+	private static ExecutorService newReaderExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	/**
+	 * Read a document of a directory build into memory. Runs on a reader thread
+	 * @param file the file to read
+	 * @return the file's bytes, or null if the file is too large to read whole and should be memory-mapped
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	private byte[] readDocument(Path file) {
+		long start = System.nanoTime();
+		try {
+			if (Files.size(file) > MAX_READ_SIZE) return null;
+			return Files.readAllBytes(file);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		finally {
+			stats.recordPhase(ConcordanceStats.Phase.READ, start);
+		}
+	}
+	
+	/**
+	 * Tokenize a document of a directory build into its own CDS and add it to a partial concordance. Runs on a
+	 * worker thread
+	 * @param document the id of the document
+	 * @param file the file the document was read from
+	 * @param bytes the document's bytes, or null to memory-map the file
+	 * @param documentTable the table receiving the document's line count
+	 * @param shards the partial concordances not held by any worker, from which one is taken and put back
+	 * @throws UncheckedIOException if the file cannot be mapped
+	 */
+	private void indexDocument(int document, Path file, byte[] bytes, DocumentTable documentTable,
+			ConcurrentLinkedQueue<MultiDocumentConcordance> shards) {
+		long start = System.nanoTime();
+		ConcordanceDataStructure cds = newStructure();
+		int lineCount;
+		if (bytes != null) {
+			ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds);
+			tokenizer.tokenize(ByteBuffer.wrap(bytes), 0, bytes.length);
+			lineCount = tokenizer.finish();
+		}
+		else {
+			try {
+				lineCount = new MappedFileIngester().ingest(file.toFile(), cds);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		documentTable.setLineCount(document, lineCount);
+		stats.addDocument(cds);
+		start = stats.recordPhase(ConcordanceStats.Phase.TOKENIZE, start);
+		
+		MultiDocumentConcordance shard = shards.poll();
+		if (shard == null) shard = new MultiDocumentConcordance(documentTable, hashFunction, termNormalizer);
+		shard.addDocument(document, cds);
+		shards.add(shard);
+		stats.recordPhase(ConcordanceStats.Phase.INDEX, start);
+	}
+	
+	/**
+	 * Stream every line of a file into a CDS through a buffered channel reader
+	 * @param input the file to be read
+	 * @param cds the CDS, or other ConcordanceTermSink, to add the words to
+	 * @return the number of lines read
+	 * @throws IOException if the file cannot be opened or read
+	 */
+	private int addLines(File input, ConcordanceTermSink cds) throws IOException {
 		
-		//Create output stream for file output
-		PrintWriter pw = new PrintWriter(output);
+		//Undecodable bytes are replaced rather than failing the read, matching Scanner
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
 		
-		//Read each line in the concordance into the output file
-		for(String line : concordance) {
-			pw.print(line);
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds);
+		char[] buffer = new char[READ_BUFFER_SIZE];
+		
+		//Hand each block of decoded characters straight to the tokenizer, timing reads and tokenizing apart
+		try (Reader reader = Channels.newReader(FileChannel.open(input.toPath()), decoder, -1)) {
+			int read;
+			long start = System.nanoTime();
+			while ((read = reader.read(buffer)) != -1) {
+				start = stats.recordPhase(ConcordanceStats.Phase.READ, start);
+				tokenizer.tokenize(buffer, 0, read);
+				start = stats.recordPhase(ConcordanceStats.Phase.TOKENIZE, start);
+			}
+			stats.recordPhase(ConcordanceStats.Phase.READ, start);
 		}
 		
-		//Close PrintWriter at the end of writing
-		pw.close();
+		return tokenizer.finish();
+	}
+	
+	/**
+	 * Add every line in a range of a String to a CDS
+	 * @param input the String holding the lines
+	 * @param start the index of the first character of the range
+	 * @param end the index after the last character of the range
+	 * @param cds the CDS to add the words to
+	 * @return the number of lines read
+	 */
+	private static int addLines(String input, int start, int end, ConcordanceDataStructure cds) {
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds);
+		tokenizer.tokenize(input, start, end);
+		return tokenizer.finish();
+	}
+	
+	/**
+	 * The partial concordance of one block of lines
+	 */
+	private static class Shard {
+		private final ConcordanceDataStructure cds;
+		private final int lineCount;
 		
-		//Return true on successful completion
-		return true;
+		/**
+		 * Create a Shard
+		 * @param cds the concordance of the block, using line numbers relative to the block
+		 * @param lineCount the number of lines in the block
+		 */
+		private Shard(ConcordanceDataStructure cds, int lineCount) {
+			this.cds = cds;
+			this.lineCount = lineCount;
+		}
+	}
+	
+	/**
+	 * A fork/join task that builds the concordance of a range of a String. Ranges larger than the chunk size
+	 * are split in two at a line boundary, both halves are built in parallel, and the right half is merged
+	 * into the left with its line numbers shifted past the left half's lines
+	 */
+	private static class BuildTask extends RecursiveTask<Shard> {
+		private static final long serialVersionUID = 1L;
+		
+		private final String input;
+		private final int start, end, chunkSize;
+		private final Supplier<ConcordanceDataStructure> factory;
+		private final ConcordanceStats stats;
+		
+		/**
+		 * Create a BuildTask
+		 * @param input the String holding the lines
+		 * @param start the index of the first character of the range, which must begin a line
+		 * @param end the index after the last character of the range
+		 * @param chunkSize the largest range built without splitting further
+		 * @param factory creates the empty CDS for each block
+		 * @param stats the stats receiving the time spent merging
+		 */
+		private BuildTask(String input, int start, int end, int chunkSize, Supplier<ConcordanceDataStructure> factory,
+				ConcordanceStats stats) {
+			this.input = input;
+			this.start = start;
+			this.end = end;
+			this.chunkSize = chunkSize;
+			this.factory = factory;
+			this.stats = stats;
+		}
+		
+		@Override
+		protected Shard compute() {
+			int split = end - start > chunkSize ? lineBoundary(start + (end - start) / 2) : end;
+			
+			//Small range, or no line boundary past the midpoint: build it directly
+			if (split >= end) {
+				ConcordanceDataStructure cds = factory.get();
+				int lineCount = addLines(input, start, end, cds);
+				return new Shard(cds, lineCount);
+			}
+			
+			//Build both halves in parallel, then fold the right half into the left
+			BuildTask right = new BuildTask(input, split, end, chunkSize, factory, stats);
+			right.fork();
+			Shard left = new BuildTask(input, start, split, chunkSize, factory, stats).compute();
+			Shard rightShard = right.join();
+			
+			long mergeStart = System.nanoTime();
+			left.cds.merge(rightShard.cds, left.lineCount);
+			stats.recordPhase(ConcordanceStats.Phase.INDEX, mergeStart);
+			return new Shard(left.cds, left.lineCount + rightShard.lineCount);
+		}
+		
+		/**
+		 * Find the start of the first line that begins at or after a position
+		 * @param from the position to search from
+		 * @return the index just past the next line terminator, or end if there is none
+		 */
+		private int lineBoundary(int from) {
+			for (int i = from; i < end; i++) {
+				char c = input.charAt(i);
+				
+				//Never split a \r\n pair
+				if (c == '\n' || (c == '\r' && (i + 1 == end || input.charAt(i + 1) != '\n'))) return i + 1;
+				if (ConcordanceTokenizer.isOtherLineTerminator(c)) return i + 1;
+			}
+			return end;
+		}
 	}
 
 }
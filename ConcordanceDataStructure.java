@@ -1,44 +1,89 @@
-//TODO: make new expand method for over-running the hash table
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.LinkedList;
 
-public class ConcordanceDataStructure implements ConcordanceDataStructureInterface{
+/**
+ * A concordance backed by an open-addressing hash table. Terms are interned by a TermDictionary,
+ * which stores their characters in one shared arena and gives each a dense int id. Postings are
+ * held in an array indexed by id. Strings are only created for terms when they are handed out
+ * through the public methods.
+ */
+public class ConcordanceDataStructure implements ConcordanceDataStructureInterface, ConcordanceTermSink{
+	
+	//Fraction of the table that may be occupied before it is resized
+	private static final double MAX_LOAD_FACTOR = 0.75;
+	
+	//Number of terms at which showAll sorts in parallel
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+	
+	//Capacity of the postings array when a structure is created
+	private static final int INITIAL_POSTINGS_CAPACITY = 1 << 6;
+	
+	//Estimated heap taken by a term's PostingsList before it holds any lines: the object and an empty array
+	private static final int POSTINGS_OVERHEAD_BYTES = 48;
 	
 	private String title;
-	private LinkedList<ConcordanceDataElement>[] hashTable;
+	private TermDictionary dictionary;
+	
+	//The postings of each term, indexed by the term's id
+	private PostingsList[] postings;
+	
+	//The positions of each term within its lines, indexed by the term's id, or null unless positions are recorded
+	private PositionalPostingsList[] positions;
+	
+	//Every term id in String order, for lookups by prefix and range. Rebuilt when needed after new terms are added
+	private int[] sortedIds;
+	
+	//Decides which terms are too short or too common to include
+	private StopWordFilter filter = StopWordFilter.DEFAULT;
+	
+	//Turns words into terms, for the text added and for lookups
+	private TermNormalizer termNormalizer = TermNormalizer.DEFAULT;
+	
+	//Normalizes terms passed to add(String, int)
+	private ConcordanceTokenizer normalizer = new ConcordanceTokenizer(this);
+	
+	//Token counts, kept as plain fields so counting costs a single increment per token
+	private long tokensAdded, tokensDroppedByCleanUp, tokensDroppedByFilter;
+	
+	//Metrics for this structure, created when first asked for
+	private ConcordanceStats stats;
+	
+	//Approximate counter that also receives every term added, or null
+	private SpaceSavingCounter termCounter;
 	
 	/**
 	 * Create a ConcordanceDataStructure with an estimated number of words to be hashed
 	 * @param num the estimated number of words to be input and hashed
 	 */
-	@SuppressWarnings("unchecked") //Cast is safe as all uses will be of the CDE object type
 	public ConcordanceDataStructure(int num) {
+		this(num, TermDictionary.DEFAULT_HASH_FUNCTION);
+	}
+	
+	/**
+	 * Create a ConcordanceDataStructure with an estimated number of words to be hashed and a choice of hash function
+	 * @param num the estimated number of words to be input and hashed
+	 * @param hashFunction the function that hashes terms
+	 */
+	public ConcordanceDataStructure(int num, TermHashFunction hashFunction) {
 		this.title = "Untitled";
 		
-		//Set the hash table at the next 4k+3 prime number after a loading factor of 1.5
-		hashTable = (LinkedList<ConcordanceDataElement>[]) new LinkedList<?>[next4kPlus3((int)(num / 1.5))];
-		
-		//Populate array with empty LinkedLists
-		for (int i = 0; i < hashTable.length; i++) {
-			hashTable[i] = new LinkedList<ConcordanceDataElement>();
-		}
+		//Set the hash table at the power of two that keeps the estimate under the maximum load factor
+		int capacity = (int)Math.min(Math.max(num, 1) / MAX_LOAD_FACTOR, Integer.MAX_VALUE);
+		dictionary = new TermDictionary(capacity, hashFunction);
+		postings = new PostingsList[INITIAL_POSTINGS_CAPACITY];
 	}
 	
 	/**
 	 * Create a ConcordanceDataStructure with a set name and hash table size
 	 * @param test the name to apply to the CDS
-	 * @param size the size at which to set the hash table
+	 * @param size the size at which to set the hash table, rounded up to a power of two
 	 */
-	@SuppressWarnings("unchecked") //Cast is safe as all uses will be of the CDE object type
 	public ConcordanceDataStructure(String test, int size) {
 		this.title = test;
-		this.hashTable = (LinkedList<ConcordanceDataElement>[]) new LinkedList<?>[size];
-		
-		//Populate array with empty LinkedLists
-		for (int i = 0; i < hashTable.length; i++) {
-			hashTable[i] = new LinkedList<ConcordanceDataElement>();
-		}
+		this.dictionary = new TermDictionary(size);
+		this.postings = new PostingsList[INITIAL_POSTINGS_CAPACITY];
 	}
 	
 	/**
@@ -49,169 +94,358 @@ public class ConcordanceDataStructure implements ConcordanceDataStructureInterfa
 	@Override
 	public void add(String term, int lineNum) {
 		
-		//Clean up the term by removing unwanted punctuation
-		term = cleanUp(term);
-		
-		//Ignore common or too-short words
-		if (isInvalid(term)) return;
+		//Strip punctuation, drop invalid terms and lower-case the term, then add it
+		normalizer.addTerm(term, lineNum);
+	}
+	
+	/**
+	 * Add a term that has already been cleaned up, validated and lower-cased. Called by ConcordanceTokenizer.
+	 * The term's characters are only copied if it is new to the dictionary
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 */
+	@Override
+	public void addNormalized(char[] chars, int length, int lineNum) {
 		
-		//Create a new CDE with the provided information
-		ConcordanceDataElement newCDE = new ConcordanceDataElement(term, lineNum);
+		//Look the term up, interning it if it is new, and add the line number to its postings
+		postingsFor(dictionary.add(chars, 0, length)).add(lineNum);
+		tokensAdded++;
 		
-		//Create a hash code from the created CDE. If the hash is negative, increase it to fit in the table
-		int newHash = newCDE.hashCode() % hashTable.length;
+		if (termCounter != null) termCounter.offer(chars, 0, length);
+	}
+	
+	/**
+	 * Add a term that has already been cleaned up, validated and lower-cased, with its position in its line.
+	 * Called by ConcordanceTokenizer. The position is only recorded if the structure is positional
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 * @param position the index of the term among the words of the line
+	 */
+	@Override
+	public void addNormalized(char[] chars, int length, int lineNum, int position) {
+		if (positions == null) {
+			addNormalized(chars, length, lineNum);
+			return;
+		}
 		
-		//Go to the hash index and check the elements present in the LinkedList at that index
-		//If the LinkedList at the hash index is empty, directly add the new CDE
-		if(hashTable[newHash].isEmpty()) hashTable[newHash].add(newCDE);
+		int id = dictionary.add(chars, 0, length);
+		postingsFor(id).add(lineNum);
+		positionsFor(id).add(lineNum, position);
+		tokensAdded++;
 		
-		//If the LinkedList at the hash index is populated, check if the new CDE is new to the LinkedList.
-		//If the new CDE is unique, it is added.
-		//Otherwise, the new line number is added to the pre-existing CDE that matches the term
-		else if(isUnique(newCDE)) {
-			
-			//If the LinkedList is NOT empty, add the new CDE at the index before an entry greater than the CDE
-			//to maintain sorting
-			boolean added = false; //Flag to indicate if the CDE gets added in the next step
-			
-			for (int i = 0; i < hashTable[newHash].size(); i++) {
-				
-				//If an entry in the LinkedList is greater than the to-add CDE, add the CDE before the greater entry
-				if (hashTable[newHash].get(i).getWord().compareTo(newCDE.getWord()) > 0) {
-					hashTable[newHash].add(i, newCDE);
-					added = true;
-					break;
-				}
-			}//end for loop
+		if (termCounter != null) termCounter.offer(chars, 0, length);
+	}
+	
+	/**
+	 * Count a token that was dropped because nothing of it was left once punctuation was removed
+	 */
+	@Override
+	public void droppedByCleanUp() {
+		tokensDroppedByCleanUp++;
+	}
+	
+	/**
+	 * Combine another ConcordanceDataStructure into this one. Terms new to this structure are added, and the
+	 * postings of matching terms are joined. Runs in time linear in the size of the other structure
+	 * @param other the structure to merge into this one. It is not modified
+	 * @param lineOffset the amount added to every line number taken from the other structure, so that a
+	 * structure built over a later block of lines can be combined using its block-relative line numbers
+	 */
+	public void merge(ConcordanceDataStructure other, int lineOffset) {
+		for (int id = 0; id < other.dictionary.size(); id++) {
+			int mine = dictionary.add(other.dictionary, id);
+			postingsFor(mine).addAll(other.postings[id], lineOffset);
 			
-			//If the CDE is greater than all items in the LinkedList, add the CDE to the end
-			if (added == false) {
-				hashTable[newHash].add(newCDE);
+			//Positions are only kept if both structures record them
+			if (positions != null && other.positionsOf(id) != null) {
+				positionsFor(mine).addAll(other.positionsOf(id), lineOffset);
 			}
 		}
 		
-		//If the entry is NOT unique, find the entry in the hash table and add the new page number to the existing CDE
-		else {
-			//Locate the existing CDE in the hash table
-			for (int i = 0; i < hashTable[newHash].size(); i++) {
-				if (hashTable[newHash].get(i).getWord().equals(newCDE.getWord())) {
-					//When the entry is found, have that entry add the page number
-					hashTable[newHash].get(i).addPage(lineNum);
-				}
-			}
-		}
+		tokensAdded += other.tokensAdded;
+		tokensDroppedByCleanUp += other.tokensDroppedByCleanUp;
+		tokensDroppedByFilter += other.tokensDroppedByFilter;
 	}
 	
 	/**
-	 * Remove unwanted punctuation from a to-add term
-	 * @param term the term to be cleaned up
-	 * @return a String of the term with unwanted punctuation removed
+	 * Add to the counts of dropped tokens, for tokens dropped before they reached this structure
+	 * @param droppedByCleanUp the number of tokens dropped because nothing of them was left once punctuation was
+	 * removed
+	 * @param droppedByFilter the number of tokens dropped by the stop word filter
 	 */
-	private String cleanUp(String term) {
-		//Go through the term and remove punctuation as found, replacing with whitespace
-		for(int i = 0; i < term.length(); i++) {
-			if (!(Character.isLetterOrDigit(term.charAt(i)))) {
-				if (!(term.charAt(i) == '\'')) {
-					term = term.replace(term.charAt(i), ' ');
-				}
-			}
+	void addDroppedTokens(long droppedByCleanUp, long droppedByFilter) {
+		tokensDroppedByCleanUp += droppedByCleanUp;
+		tokensDroppedByFilter += droppedByFilter;
+	}
+	
+	/**
+	 * Add a term together with a run of its line numbers and the number of times it occurred on them. Used when
+	 * loading a saved concordance
+	 * @param word the lower-case term, which is not filtered
+	 * @param lines an array holding the line numbers of the term
+	 * @param count the number of line numbers in the array
+	 * @param occurrences the number of times the term occurred on those lines, counting repeats
+	 */
+	public void addPostings(String word, int[] lines, int count, long occurrences) {
+		PostingsList list = postingsFor(dictionary.add(word));
+		for (int i = 0; i < count; i++) {
+			list.add(lines[i]);
 		}
 		
-		//Remove the whitespace characters added as the result of the above operation
-		term = term.replaceAll(" ", "");
-		
-		//Return the modified term
-		return term;
+		//Each add counted one occurrence
+		list.addOccurrences(occurrences - count);
 	}
-
+	
 	/**
-	 * Check if a term is able to be included in the concordance
-	 * @param term the term to be validated
-	 * @return true if the term is INVALID, and should be excluded from the concordance
+	 * Get the postings of a term, creating them if the term was just added to the dictionary
+	 * @param id the id of the term
+	 * @return the postings of the term
 	 */
-	private boolean isInvalid(String term) {
-		//Create a String containing common words for removal
-		String invalids = "and the";
-		
-		//Remove whitespace
-		term = term.trim();
-		
-		//Check if the trimmed term contains any words from the invalid string
-		if (invalids.contains(term)) return true;
-		
-		//Check if the trimmed term is shorter than 3 characters in length
-		else if (term.length() < 3) return true;
+	private PostingsList postingsFor(int id) {
+		if (id < postings.length && postings[id] != null) return postings[id];
 		
-		//If the above tests are passed, return false
-		else return false;
+		//New term: make room for its postings, and forget the sorted order, which no longer includes it
+		if (id == postings.length) postings = Arrays.copyOf(postings, postings.length * 2);
+		postings[id] = new PostingsList();
+		sortedIds = null;
+		return postings[id];
 	}
-
+	
 	/**
-	 * Verify if a given Concordance Data Element is unique in the data structure
-	 * @param newCDE the CDE to verify
-	 * @return true if there is no occurrence of the CDE parameter in the data structure, and false otherwise
+	 * Get the positions of a term, creating them if the term has none yet. Only called on a positional structure
+	 * @param id the id of the term
+	 * @return the positions of the term
 	 */
-	private boolean isUnique(ConcordanceDataElement newCDE) {
-		//Get the CDE's hash code to search the table
-		int hashCode = newCDE.hashCode() % hashTable.length;
-		
-		//Look through the associated LinkedList at the indicated hash
-		for (int i = 0; i < hashTable[hashCode].size(); i++) {
-			if (hashTable[hashCode].get(i).getWord().equals(newCDE.getWord())) return false;
+	private PositionalPostingsList positionsFor(int id) {
+		if (id >= positions.length) positions = Arrays.copyOf(positions, postings.length);
+		if (positions[id] == null) positions[id] = new PositionalPostingsList();
+		return positions[id];
+	}
+	
+	/**
+	 * Get the positions of a term, if it has any
+	 * @param id the id of the term
+	 * @return the positions, or null if the structure is not positional or the term was added without positions
+	 */
+	private PositionalPostingsList positionsOf(int id) {
+		return positions == null || id >= positions.length ? null : positions[id];
+	}
+	
+	/**
+	 * Choose whether the structure records the position of each term among the words of its line, as well as
+	 * the line, so that it can answer phrase and near queries. Positions are kept delta-encoded in a
+	 * PositionalPostingsList per term, beside the line numbers, which are stored as before. A structure that
+	 * does not record positions pays nothing for them. Terms loaded with addPostings have no positions
+	 * @param positional true to record positions
+	 * @throws IllegalStateException if terms have already been added
+	 */
+	public void setPositional(boolean positional) {
+		if (dictionary.size() > 0) throw new IllegalStateException("Positions must be chosen before terms are added");
+		positions = positional ? new PositionalPostingsList[postings.length] : null;
+	}
+	
+	/**
+	 * Check whether the structure records the positions of terms within their lines
+	 * @return true if positions are recorded
+	 */
+	public boolean isPositional() {
+		return positions != null;
+	}
+	
+	/**
+	 * Get the number of distinct terms in the table
+	 * @return the number of terms
+	 */
+	public int getTermCount() {
+		return dictionary.size();
+	}
+	
+	/**
+	 * Get the metrics of this structure: token counts, table usage and the time spent sorting and writing
+	 * @return the stats, which stay current as the structure changes
+	 */
+	public ConcordanceStats getStats() {
+		if (stats == null) {
+			stats = new ConcordanceStats();
+			stats.track(this);
 		}
-		
-		//Return true if the above loop concludes without finding a matching term
-		return true;
+		return stats;
 	}
-
+	
 	/**
-	 * From a starting integer, find the next integer value that satisfies the 4k+3 prime test
-	 * @param fourKPlus3PrimeTest the starting integer
-	 * @return the next prime number that is 3 more than a multiple of four
-	 * @throws ArithmeticException if no 4k+3 prime is found within the integer range
+	 * Report this structure's metrics through a given stats object, such as one shared by a manager's builds
+	 * @param stats the stats to report through
 	 */
-	private int next4kPlus3(int fourKPlus3PrimeTest) throws ArithmeticException{
-		
-		boolean fourKPlus3Found = false;
+	void setStats(ConcordanceStats stats) {
+		this.stats = stats;
+		stats.track(this);
+	}
+	
+	/**
+	 * Get the number of tokens added to the concordance
+	 * @return the number of tokens kept
+	 */
+	long getTokensAdded() {
+		return tokensAdded;
+	}
+	
+	/**
+	 * Get the number of tokens dropped because nothing of them was left once punctuation was removed
+	 * @return the number of tokens
+	 */
+	long getTokensDroppedByCleanUp() {
+		return tokensDroppedByCleanUp;
+	}
+	
+	/**
+	 * Get the number of tokens dropped by the stop word filter
+	 * @return the number of tokens
+	 */
+	long getTokensDroppedByFilter() {
+		return tokensDroppedByFilter;
+	}
+	
+	/**
+	 * Add up the storage of every term's line numbers. Stats may call this from another thread while terms are
+	 * being added, so it works from local copies of the arrays and skips any term whose postings are not in place
+	 * yet: the dictionary counts a new term before its postings are created
+	 * @return the number of bytes
+	 */
+	long getPostingsBytes() {
+		PostingsList[] lists = postings;
+		PositionalPostingsList[] positionLists = positions;
+		int count = Math.min(dictionary.size(), lists.length);
 		
-		while (fourKPlus3Found == false && fourKPlus3PrimeTest != Integer.MAX_VALUE) {
-			fourKPlus3PrimeTest++;
-			if (((fourKPlus3PrimeTest - 3) % 4 == 0) && isPrime(fourKPlus3PrimeTest)) {
-				fourKPlus3Found = true;
-				return fourKPlus3PrimeTest;
-			}
+		long bytes = 0;
+		for (int id = 0; id < count; id++) {
+			PostingsList list = lists[id];
+			if (list != null) bytes += list.getByteSize();
+			
+			PositionalPostingsList positionList = positionLists == null || id >= positionLists.length
+					? null : positionLists[id];
+			if (positionList != null) bytes += positionList.getByteSize();
 		}
-		
-		//If no new Prime is found, throw ArithmeticException
-		//This should only happen if the integer value overflows
-		throw new ArithmeticException("No 4k+3 Prime was found");
+		return bytes;
 	}
 	
 	/**
-	 * Check if a number is prime by dividing it by all numbers between 2 and its square root
-	 * @param num the number to be checked
-	 * @return true if the number is prime, and false otherwise
+	 * Estimate the heap taken by the structure, apart from the line numbers themselves, without walking its terms
+	 * @return the bytes taken by the term dictionary, the postings array and an empty PostingsList per term
 	 */
-	private boolean isPrime(int num) {
-		
-		boolean isPrimeNumber = true;
-		
-		//Check if the number is evenly divisible by the numbers preceding it
-		//Test goes from 2 to the square root of the number
-		for(int i = 2; (i * i) < num; i++) {
-			if (num % i == 0) {
-				isPrimeNumber = false;
-				break;
-			}
+	long getStructureBytes() {
+		return dictionary.getByteSize() + postings.length * (long) Integer.BYTES
+				+ dictionary.size() * (long) POSTINGS_OVERHEAD_BYTES;
+	}
+	
+	/**
+	 * Remove every term, keeping the hash function, stop word filter, normalizer and hash table size. The token
+	 * counts are kept, so they still describe everything the structure has been given
+	 */
+	public void clear() {
+		dictionary = new TermDictionary(dictionary.getTableSize(), dictionary.getHashFunction());
+		postings = new PostingsList[INITIAL_POSTINGS_CAPACITY];
+		if (positions != null) positions = new PositionalPostingsList[INITIAL_POSTINGS_CAPACITY];
+		sortedIds = null;
+	}
+	
+	/**
+	 * Get the dictionary interning this structure's terms. Term ids run from 0 to getTermCount() - 1.
+	 * Callers must not add to it
+	 * @return the term dictionary
+	 */
+	TermDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	/**
+	 * Get the line numbers of a term. Callers must not modify them
+	 * @param id the id of the term
+	 * @return the line numbers
+	 */
+	PostingsList postingsOf(int id) {
+		return postings[id];
+	}
+	
+	/**
+	 * Get a term as a ConcordanceDataElement holding the term and its line numbers
+	 * @param word the word to look up, normalized the way add normalizes it
+	 * @return a new ConcordanceDataElement sharing the term's line numbers, or null if the word is not in the
+	 * concordance
+	 */
+	public ConcordanceDataElement getElement(String word) {
+		int id = dictionary.find(termNormalizer.normalize(word));
+		return id < 0 ? null : new ConcordanceDataElement(dictionary.getTerm(id), postings[id]);
+	}
+	
+	/**
+	 * Compress the postings of every term into their compact encoded form. Useful once a concordance is
+	 * complete and will only be read; adding a line to a term afterwards expands that term's postings again
+	 */
+	public void freeze() {
+		for (int id = 0; id < dictionary.size(); id++) {
+			postings[id].freeze();
 		}
+	}
+	
+	/**
+	 * Check if a normalized term is able to be included in the concordance, according to the stop word filter
+	 * @param chars a buffer holding the term, cleaned up and lower-cased
+	 * @param length the number of characters in the term
+	 * @return true if the term is INVALID, and should be excluded from the concordance
+	 */
+	@Override
+	public boolean isInvalid(char[] chars, int length) {
+		if (!filter.rejects(chars, length)) return false;
 		
-		return isPrimeNumber;
+		tokensDroppedByFilter++;
+		return true;
+	}
+	
+	/**
+	 * Pass every term added from now on to an approximate counter as well, so its top terms can be read while the
+	 * concordance is still being built. Terms merged in from another structure are not passed on
+	 * @param termCounter the counter, or null to stop counting
+	 */
+	public void setTermCounter(SpaceSavingCounter termCounter) {
+		this.termCounter = termCounter;
 	}
 	
+	/**
+	 * Set the filter deciding which terms are left out of the concordance. Terms already added are not affected
+	 * @param filter the filter to apply to new terms
+	 */
+	public void setStopWordFilter(StopWordFilter filter) {
+		this.filter = filter;
+	}
+	
+	/**
+	 * Set the normalizer that turns words into terms, both for the text added to the structure and for the words
+	 * it is asked to look up. Tokenizers created for the structure from then on use it
+	 * @param termNormalizer the normalizer, for example TermNormalizer.NFC
+	 * @throws IllegalStateException if terms have already been added
+	 */
+	public void setTermNormalizer(TermNormalizer termNormalizer) {
+		if (dictionary.size() > 0) throw new IllegalStateException("The normalizer must be set before terms are added");
+		this.termNormalizer = termNormalizer;
+		this.normalizer = new ConcordanceTokenizer(this);
+	}
+	
+	/**
+	 * Get the normalizer that turns words into terms for this structure
+	 * @return the normalizer, TermNormalizer.DEFAULT unless another has been set
+	 */
+	@Override
+	public TermNormalizer getTermNormalizer() {
+		return termNormalizer;
+	}
+
 	/**
 	 * Get a list of the page numbers for the terms at a given index in the hash table
 	 * @param index the index form which to generate the list of page numbers
-	 * @return an ArrayList containing all page numbers for all terms at the given index
+	 * @return an ArrayList containing the page numbers of the term at the given index, or an empty
+	 * ArrayList if the slot is unused
 	 */
 	@Override
 	public ArrayList<LinkedList<Integer>> getPageNumbers(int index) {
@@ -219,9 +453,12 @@ public class ConcordanceDataStructure implements ConcordanceDataStructureInterfa
 		//Create empty ArrayList for returning
 		ArrayList<LinkedList<Integer>> returnList = new ArrayList<LinkedList<Integer>>();
 		
-		//Access the indicated index of the hash table and add term's page number list to the ArrayList
-		for (int i = 0; i < hashTable[index].size(); i++) {
-			returnList.add(hashTable[index].get(i).getList());
+		//Each slot of the table holds at most one term. Its lines are added straight from its postings
+		int id = dictionary.idAt(index);
+		if (id >= 0) {
+			LinkedList<Integer> pages = new LinkedList<>();
+			postings[id].forEachLine(pages::add);
+			returnList.add(pages);
 		}
 		
 		//Return the completed ArrayList
@@ -233,54 +470,462 @@ public class ConcordanceDataStructure implements ConcordanceDataStructureInterfa
 	 */
 	@Override
 	public int getTableSize() {
-		return hashTable.length;
+		return dictionary.getTableSize();
 	}
 
 	/**
 	 * Get a list of the words entered at the given index of the hash table
 	 * @param index the index of the hash table
-	 * @return an ArrayList of each word in the given hash table bucket
+	 * @return an ArrayList holding the word in the given slot, or an empty ArrayList if the slot is unused
 	 */
 	@Override
 	public ArrayList<String> getWords(int index) {
-		//Create empty ArrayList for returning
-		ArrayList<String> returnList = new ArrayList<>();
+		//Create empty ArrayList for returning, with room for the one word a slot can hold
+		ArrayList<String> returnList = new ArrayList<>(1);
 		
-		for(int i = 0; i < hashTable[index].size(); i++) {
-			returnList.add(hashTable[index].get(i).getWord());
-		}
+		//Each slot of the table holds at most one term
+		int id = dictionary.idAt(index);
+		if (id >= 0) returnList.add(dictionary.getTerm(id));
 		
 		//Return populated ArrayList
 		return returnList;
 	}
 
+	/**
+	 * Get the number of lines of the term at a given index of the hash table
+	 * @param index the index of the hash table
+	 * @return the number of lines, or 0 if the slot is unused
+	 */
+	@Override
+	public int getLineCount(int index) {
+		int id = dictionary.idAt(index);
+		return id < 0 ? 0 : postings[id].size();
+	}
+	
+	/**
+	 * Copy the lines of the term at a given index of the hash table into an existing array, without boxing
+	 * @param index the index of the hash table
+	 * @param dest the array to fill, which must have room for getLineCount(index) lines from offset
+	 * @param offset the index of dest at which to start
+	 * @return the number of lines copied, or 0 if the slot is unused
+	 */
+	@Override
+	public int getLines(int index, int[] dest, int offset) {
+		int id = dictionary.idAt(index);
+		return id < 0 ? 0 : postings[id].copyTo(dest, offset);
+	}
+	
+	/**
+	 * Get a read-only view of the lines of the term at a given index of the hash table. Nothing is copied
+	 * @param index the index of the hash table
+	 * @return the lines of the term, or null if the slot is unused
+	 */
+	public PostingsView getLineView(int index) {
+		int id = dictionary.idAt(index);
+		return id < 0 ? null : postings[id];
+	}
+	
+	/**
+	 * Pass every term and its lines to a visitor, in the order the terms were first added. A single reused view
+	 * of the terms is passed, so nothing is allocated per term. The structure must not be added to while the
+	 * visit runs
+	 * @param visitor the visitor receiving each term
+	 */
+	@Override
+	public void forEach(ConcordanceVisitor visitor) {
+		TermDictionary.TermView term = dictionary.newView();
+		for (int id = 0; id < dictionary.size(); id++) {
+			visitor.visit(term.moveTo(id), postings[id]);
+		}
+	}
+	
+	/**
+	 * Get the k terms that occur most often, most frequent first and alphabetically among equal counts. The terms
+	 * are chosen in a single pass over the table with a heap of at most k ids, so only the chosen terms are
+	 * sorted and only they are turned into Strings
+	 * @param k the number of terms wanted
+	 * @return an ArrayList of at most k terms and their exact occurrence counts
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	@Override
+	public ArrayList<TermCount> topTerms(int k) {
+		if (k < 0) throw new IllegalArgumentException("k must not be negative");
+		
+		//A min-heap of the best terms so far, whose root is the one that would be dropped first
+		int[] heap = new int[Math.min(k, dictionary.size())];
+		int heapSize = 0;
+		for (int id = 0; id < dictionary.size(); id++) {
+			if (heapSize < heap.length) {
+				heap[heapSize] = id;
+				siftUp(heap, heapSize++);
+			}
+			else if (heapSize > 0 && ranksAbove(id, heap[0])) {
+				heap[0] = id;
+				siftDown(heap, heapSize);
+			}
+		}
+		
+		//Take the lowest ranked term off the heap each time, filling the report from its end
+		TermCount[] top = new TermCount[heapSize];
+		for (int i = heapSize - 1; i >= 0; i--) {
+			int id = heap[0];
+			top[i] = new TermCount(dictionary.getTerm(id), postings[id].getOccurrenceCount(), 0);
+			heap[0] = heap[i];
+			siftDown(heap, i);
+		}
+		
+		return new ArrayList<>(Arrays.asList(top));
+	}
+	
+	/**
+	 * Check whether one term ranks above another in a frequency report
+	 * @param id1 the id of the first term
+	 * @param id2 the id of the second term
+	 * @return true if the first term occurs more often, or as often and comes first alphabetically
+	 */
+	private boolean ranksAbove(int id1, int id2) {
+		long count1 = postings[id1].getOccurrenceCount(), count2 = postings[id2].getOccurrenceCount();
+		return count1 != count2 ? count1 > count2 : dictionary.compare(id1, id2) < 0;
+	}
+	
+	/**
+	 * Move a term up a topTerms heap until its parent ranks above it
+	 * @param heap the heap of term ids
+	 * @param index the index of the term to move
+	 */
+	private void siftUp(int[] heap, int index) {
+		int id = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!ranksAbove(heap[parent], id)) break;
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = id;
+	}
+	
+	/**
+	 * Move the root of a topTerms heap down until both its children rank above it
+	 * @param heap the heap of term ids
+	 * @param size the number of ids in the heap
+	 */
+	private void siftDown(int[] heap, int size) {
+		int id = heap[0], index = 0;
+		while (true) {
+			int child = index * 2 + 1;
+			if (child >= size) break;
+			if (child + 1 < size && ranksAbove(heap[child], heap[child + 1])) child++;
+			if (!ranksAbove(id, heap[child])) break;
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = id;
+	}
+	
+	/**
+	 * Get the lines on which a word occurs. The word is normalized the way add normalizes it, so "Hello," finds
+	 * the lines of "hello"
+	 * @param word the word to look up
+	 * @return the lines in ascending order, or an empty array if the word is not in the concordance
+	 */
+	@Override
+	public int[] lookup(String word) {
+		int id = dictionary.find(termNormalizer.normalize(word));
+		return id < 0 ? new int[0] : postings[id].toArray();
+	}
+	
+	/**
+	 * Get the lines on which a phrase occurs: its words one after another, in order, on a single line. The phrase
+	 * is split and normalized the way text added to the structure is. Words the stop word filter leaves out of the
+	 * structure still take up a position, and match any word, so "end of the line" finds lines where "line"
+	 * follows "end" three words later. The lines are found by intersecting the positions of the phrase's words
+	 * a line at a time, without reading the text again
+	 * @param phrase the phrase to search for
+	 * @return the lines in ascending order, or an empty array if the phrase does not occur or has no indexed words
+	 * @throws IllegalStateException if the structure does not record positions
+	 */
+	public int[] phrase(String phrase) {
+		if (positions == null) throw new IllegalStateException("The structure does not record positions");
+		
+		PhraseTerms terms = new PhraseTerms();
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(terms);
+		tokenizer.tokenize(phrase, 0, phrase.length());
+		tokenizer.finish();
+		if (terms.missing || terms.count == 0) return new int[0];
+		
+		//One cursor per word of the phrase, even when a word repeats
+		PositionalPostingsList.Cursor[] cursors = new PositionalPostingsList.Cursor[terms.count];
+		for (int i = 0; i < terms.count; i++) {
+			if (positionsOf(terms.ids[i]) == null) return new int[0];
+			cursors[i] = positions[terms.ids[i]].cursor();
+		}
+		
+		//On each line holding every word, look for a position of the first word followed by the others in place
+		PostingsList lines = new PostingsList();
+		while (alignLines(cursors)) {
+			PositionalPostingsList.Cursor first = cursors[0];
+			for (int p = 0; p < first.getPositionCount(); p++) {
+				int start = first.getPosition(p) - terms.positions[0];
+				boolean matches = true;
+				for (int i = 1; i < cursors.length && matches; i++) {
+					matches = cursors[i].hasPosition(start + terms.positions[i]);
+				}
+				if (matches) {
+					lines.add(first.getLine());
+					break;
+				}
+			}
+			if (!first.nextLine()) break;
+		}
+		
+		return lines.toArray();
+	}
+	
+	/**
+	 * Get the lines on which two words occur within a given number of words of each other, in either order. Both
+	 * words are normalized the way add normalizes them. A word may be paired with itself, in which case it must
+	 * occur twice within the distance
+	 * @param word1 the first word
+	 * @param word2 the second word
+	 * @param maxDistance the largest difference between the words' positions, where 1 means next to each other
+	 * @return the lines in ascending order, or an empty array if the words are never that close
+	 * @throws IllegalStateException if the structure does not record positions
+	 * @throws IllegalArgumentException if maxDistance is less than 1
+	 */
+	public int[] near(String word1, String word2, int maxDistance) {
+		if (positions == null) throw new IllegalStateException("The structure does not record positions");
+		if (maxDistance < 1) throw new IllegalArgumentException("Distance must be at least 1");
+		
+		int id1 = dictionary.find(termNormalizer.normalize(word1));
+		int id2 = dictionary.find(termNormalizer.normalize(word2));
+		if (id1 < 0 || id2 < 0 || positionsOf(id1) == null || positionsOf(id2) == null) return new int[0];
+		
+		PositionalPostingsList.Cursor[] cursors = {positions[id1].cursor(), positions[id2].cursor()};
+		PostingsList lines = new PostingsList();
+		while (alignLines(cursors)) {
+			if (within(cursors[0], cursors[1], maxDistance)) lines.add(cursors[0].getLine());
+			if (!cursors[0].nextLine()) break;
+		}
+		
+		return lines.toArray();
+	}
+	
+	/**
+	 * Advance cursors until they are all on the same line, leapfrogging each to the furthest line any has reached
+	 * @param cursors the cursors to align. A cursor that has not been started is moved to its first line
+	 * @return true if the cursors are on a common line, false if one ran out of lines first
+	 */
+	private static boolean alignLines(PositionalPostingsList.Cursor[] cursors) {
+		int target = Integer.MIN_VALUE;
+		for (PositionalPostingsList.Cursor cursor : cursors) {
+			if (!cursor.advanceTo(target)) return false;
+			target = Math.max(target, cursor.getLine());
+		}
+		
+		//Bring every cursor up to the furthest line, starting again whenever one passes it
+		boolean aligned = false;
+		while (!aligned) {
+			aligned = true;
+			for (PositionalPostingsList.Cursor cursor : cursors) {
+				if (!cursor.advanceTo(target)) return false;
+				if (cursor.getLine() > target) {
+					target = cursor.getLine();
+					aligned = false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Check whether two cursors on the same line have a pair of distinct positions within a distance. The
+	 * positions are walked together in ascending order, as the closest pair is always adjacent in that order
+	 * @param cursor1 the first cursor
+	 * @param cursor2 the second cursor
+	 * @param maxDistance the largest difference allowed
+	 * @return true if some pair of positions is close enough
+	 */
+	private static boolean within(PositionalPostingsList.Cursor cursor1, PositionalPostingsList.Cursor cursor2,
+			int maxDistance) {
+		int i = 0, j = 0;
+		while (i < cursor1.getPositionCount() && j < cursor2.getPositionCount()) {
+			int p1 = cursor1.getPosition(i), p2 = cursor2.getPosition(j);
+			if (p1 != p2 && Math.abs(p1 - p2) <= maxDistance) return true;
+			if (p1 <= p2) i++;
+			else j++;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get every word that starts with a prefix, in String order. The prefix is normalized the way add
+	 * normalizes words
+	 * @param prefix the prefix to search for
+	 * @return an ArrayList of the matching words
+	 */
+	@Override
+	public ArrayList<String> prefix(String prefix) {
+		int[] sorted = sortedIds();
+		String start = termNormalizer.normalize(prefix);
+		
+		//The matching words sit together in sorted order, beginning where the prefix itself would go
+		ArrayList<String> returnList = new ArrayList<>();
+		for (int i = lowerBound(sorted, start); i < sorted.length && dictionary.startsWith(sorted[i], start); i++) {
+			returnList.add(dictionary.getTerm(sorted[i]));
+		}
+		
+		return returnList;
+	}
+	
+	/**
+	 * Get every word from one word up to, but not including, another, in String order. Both bounds are
+	 * normalized the way add normalizes words
+	 * @param from the lowest word to include, or null to start from the first word
+	 * @param to the word at which to stop, or null to continue to the last word
+	 * @return an ArrayList of the words in the range
+	 */
+	@Override
+	public ArrayList<String> range(String from, String to) {
+		int[] sorted = sortedIds();
+		int start = from == null ? 0 : lowerBound(sorted, termNormalizer.normalize(from));
+		int end = to == null ? sorted.length : lowerBound(sorted, termNormalizer.normalize(to));
+		
+		ArrayList<String> returnList = new ArrayList<>(Math.max(end - start, 0));
+		for (int i = start; i < end; i++) {
+			returnList.add(dictionary.getTerm(sorted[i]));
+		}
+		
+		return returnList;
+	}
+	
+	/**
+	 * Get every term id in String order, sorting them again only if terms were added since the last call
+	 * @return the sorted ids. Callers must not modify the array
+	 */
+	private int[] sortedIds() {
+		if (sortedIds == null) sortedIds = dictionary.sortedIds();
+		return sortedIds;
+	}
+	
+	/**
+	 * Binary search sorted term ids for the first term that is not less than a word
+	 * @param sorted the term ids in String order
+	 * @param word the word to search for
+	 * @return the index of the first term greater than or equal to the word, or sorted.length if there is none
+	 */
+	private int lowerBound(int[] sorted, String word) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (dictionary.compare(sorted[mid], word) < 0) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+	
 	/**
 	 * Display all words in the ConcordanceDataStructure
 	 * @return an ArrayList containing all words and their page occurrences
 	 */
 	@Override
 	public ArrayList<String> showAll() {
+		
+		//Sort every term once, by its precomputed apostrophe-free sort key
+		ConcordanceOrder.Entry[] entries = sortedEntries();
+		
+		//Format each sorted term as a line of the concordance
+		long start = System.nanoTime();
+		ArrayList<String> returnList = new ArrayList<>(entries.length);
+		StringBuilder line = new StringBuilder();
+		for (ConcordanceOrder.Entry entry : entries) {
+			line.setLength(0);
+			line.append(entry.getWord()).append(": ");
+			entry.getPostings().appendTo(line);
+			returnList.add(line.append('\n').toString());
+		}
+		getStats().recordPhase(ConcordanceStats.Phase.WRITE, start);
+		
+		return returnList;
+	}
+	
+	/**
+	 * Write every word in the ConcordanceDataStructure, in the same order and format as showAll, without
+	 * building a String for each line
+	 * @param writer the writer receiving the lines
+	 * @throws IOException if the writer fails
+	 */
+	public void writeAll(ConcordanceWriter writer) throws IOException {
+		ConcordanceOrder.Entry[] entries = sortedEntries();
+		
+		long start = System.nanoTime();
+		for (ConcordanceOrder.Entry entry : entries) {
+			writer.write(entry.getWord(), entry.getPostings());
+		}
+		getStats().recordPhase(ConcordanceStats.Phase.WRITE, start);
+	}
+	
+	/**
+	 * Collect every term in the table and sort them into concordance order
+	 * @return an array of every term, in the order showAll lists them
+	 */
+	ConcordanceOrder.Entry[] sortedEntries() {
+		long start = System.nanoTime();
+		ConcordanceOrder.Entry[] entries = new ConcordanceOrder.Entry[dictionary.size()];
+		
+		//Terms are listed as Strings, so this is where they are created
+		for (int id = 0; id < entries.length; id++) {
+			entries[id] = new ConcordanceOrder.Entry(dictionary.getTerm(id), postings[id]);
+		}
+		
+		//Large tables are sorted on the common fork/join pool
+		if (entries.length >= PARALLEL_SORT_THRESHOLD) Arrays.parallelSort(entries, ConcordanceOrder.ENTRY_ORDER);
+		else Arrays.sort(entries, ConcordanceOrder.ENTRY_ORDER);
+		getStats().recordPhase(ConcordanceStats.Phase.SORT, start);
+		
+		return entries;
+	}
 
-		//Create SortedDoubleLinkedList for returning
-		SortedDoubleLinkedList<String> sortedList = new SortedDoubleLinkedList<>(new Comparator<String>() {
-																					@Override //This is messy, but it compares
-																					//Strings without involving the apostrophe
-																					public int compare(String s1, String s2) {
-																						return s1.replaceAll("'", "").compareTo(
-																								s2.replaceAll("'", ""));
-																					}
-																				}); 
-		
-		//Add each item in the hashTable to the sortedList. Each term will be automatically sorted in alphabetical ascending order
-		for(int i = 0; i < hashTable.length; i++) {
-			for(int j = 0; j < hashTable[i].size(); j++) {
-				sortedList.add(hashTable[i].get(j).toString() + "\n");
-			}
+	/**
+	 * Collects the indexed words of a phrase as it is tokenized: the id of each word in this structure and its
+	 * position in the phrase
+	 */
+	private class PhraseTerms implements ConcordanceTermSink {
+		private int[] ids = new int[4], positions = new int[4];
+		private int count;
+		
+		//Whether the phrase holds a word that cannot match, because it is not in the structure or is on a later line
+		private boolean missing;
+		
+		@Override
+		public boolean isInvalid(char[] chars, int length) {
+			return filter.rejects(chars, length);
 		}
 		
-		//Convert the sorted list to an ArrayList<String> for returning
-		return sortedList.toArrayList();
+		@Override
+		public TermNormalizer getTermNormalizer() {
+			return termNormalizer;
+		}
+		
+		@Override
+		public void addNormalized(char[] chars, int length, int lineNum) {
+			addNormalized(chars, length, lineNum, 0);
+		}
+		
+		@Override
+		public void addNormalized(char[] chars, int length, int lineNum, int position) {
+			int id = dictionary.find(new String(chars, 0, length));
+			if (id < 0 || lineNum != 1) {
+				missing = true;
+				return;
+			}
+			
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				positions = Arrays.copyOf(positions, count * 2);
+			}
+			ids[count] = id;
+			positions[count++] = position;
+		}
 	}
 
 }
-
@@ -82,6 +82,63 @@ import java.util.LinkedList;
        */
       public ArrayList<String> showAll();
       
+      /**
+       * Returns the line numbers of a word, normalized the same way add normalizes it
+       * @param word the word to look up
+       * @return an array of the line numbers in numerical order, or an empty array if
+       * the word is not in the concordance
+       */
+      public int[] lookup(String word);
+      
+      /**
+       * Returns every word that starts with the given prefix, in String (lexicographic) order
+       * @param prefix the prefix to search for, normalized the same way add normalizes words
+       * @return an ArrayList of the matching words
+       */
+      public ArrayList<String> prefix(String prefix);
+      
+      /**
+       * Returns every word from one word up to, but not including, another,
+       * in String (lexicographic) order
+       * @param from the lowest word to include, or null to start from the first word
+       * @param to the word at which to stop, or null to continue to the last word
+       * @return an ArrayList of the words in the range
+       */
+      public ArrayList<String> range(String from, String to);
+      
+      /**
+       * Returns the number of line numbers of the word at this index
+       * @param index location within the hash table
+       * @return the number of line numbers, or 0 if no word is at this index
+       */
+      public int getLineCount(int index);
+      
+      /**
+       * Copies the line numbers of the word at this index into an array, without
+       * boxing them or building a list
+       * @param index location within the hash table
+       * @param dest the array to fill, with room for getLineCount(index) numbers from offset
+       * @param offset the index of dest at which to start
+       * @return the number of line numbers copied, or 0 if no word is at this index
+       */
+      public int getLines(int index, int[] dest, int offset);
+      
+      /**
+       * Passes every word and its line numbers to a visitor, without creating
+       * a String or a list for each word
+       * @param visitor the visitor receiving each word and its line numbers
+       */
+      public void forEach(ConcordanceVisitor visitor);
+      
+      /**
+       * Returns the k words that occur most often, counting every occurrence
+       * rather than distinct lines. The most frequent word comes first, and
+       * words with equal counts are in alphabetical order
+       * @param k the number of words wanted
+       * @return an ArrayList of at most k words and their occurrence counts
+       */
+      public ArrayList<TermCount> topTerms(int k);
+      
    }// end of ConcordanceDataStructureInterface
 
  
\ No newline at end of file
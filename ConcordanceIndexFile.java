@@ -0,0 +1,476 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A concordance saved to disk, so that a growing text file can be indexed a piece at a time instead of being
+ * rebuilt from the start.
+ *
+ * The file is a 12-byte header (a magic number, the format version and the TermNormalizer the terms were
+ * normalized with, 0 for the default and 1 for NFC) followed by one or more segments. The first segment is
+ * written by a full build and each append adds a delta segment holding only the lines indexed since the segment
+ * before it, so an append costs time in proportion to the new text. compact() merges the segments back into
+ * one. Each segment is laid out as:
+ * <pre>
+ * int    segment magic number
+ * long   length of the segment in bytes, this header included
+ * int    first line indexed by the segment
+ * int    last line indexed by the segment
+ * long   offset in the input file just past the last line indexed
+ * int    number of terms
+ * int[]  offset of each term's entry from the start of the entries, then the length of the entries
+ * entries, sorted by the unsigned UTF-8 bytes of their terms. Each entry is:
+ *        varint length of the term in bytes, then the term in UTF-8
+ *        varint number of lines, varlong number of occurrences counting repeats on a line, then the lines
+ *        as varint gaps, as written by PostingsList.writeEncoded
+ * </pre>
+ * Ints and longs are big-endian. The offset table lets a reader binary search the terms of a segment without
+ * decoding any entries. A segment cut short by a failed write is ignored when the file is read, and is
+ * overwritten by the next append.
+ */
+public class ConcordanceIndexFile {
+
+	//File header: magic number ("CONC"), format version and term normalizer
+	static final int MAGIC = 0x434F4E43;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 12;
+
+	//How the term normalizer is recorded in the header
+	private static final int DEFAULT_NORMALIZER = 0;
+	private static final int NFC_NORMALIZER = 1;
+
+	//Segment header: magic number ("SEGM"), length, first line, last line, input offset and term count
+	static final int SEGMENT_MAGIC = 0x5345474D;
+	static final int SEGMENT_HEADER_SIZE = 32;
+
+	//Size of the buffer used when writing a segment
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private final File file;
+
+	/**
+	 * The header of one segment of an index file
+	 */
+	public static class Segment {
+
+		private final long position, length;
+		private final int firstLine, lastLine, termCount;
+		private final long inputOffset;
+
+		/**
+		 * Create a Segment
+		 * @param position the offset of the segment in the index file
+		 * @param length the length of the segment in bytes
+		 * @param firstLine the first line indexed by the segment
+		 * @param lastLine the last line indexed by the segment
+		 * @param inputOffset the offset in the input file just past the last line indexed
+		 * @param termCount the number of terms in the segment
+		 */
+		Segment(long position, long length, int firstLine, int lastLine, long inputOffset, int termCount) {
+			this.position = position;
+			this.length = length;
+			this.firstLine = firstLine;
+			this.lastLine = lastLine;
+			this.inputOffset = inputOffset;
+			this.termCount = termCount;
+		}
+
+		/**
+		 * Get the offset of the segment in the index file
+		 * @return the offset in bytes
+		 */
+		long getPosition() {
+			return position;
+		}
+
+		/**
+		 * Get the length of the segment
+		 * @return the length in bytes, header included
+		 */
+		long getLength() {
+			return length;
+		}
+
+		/**
+		 * Get the first line indexed by the segment
+		 * @return the line number
+		 */
+		public int getFirstLine() {
+			return firstLine;
+		}
+
+		/**
+		 * Get the last line indexed by the segment. This is firstLine - 1 if the segment holds no lines
+		 * @return the line number
+		 */
+		public int getLastLine() {
+			return lastLine;
+		}
+
+		/**
+		 * Get the offset in the input file from which the next append continues
+		 * @return the offset in bytes
+		 */
+		public long getInputOffset() {
+			return inputOffset;
+		}
+
+		/**
+		 * Get the number of terms in the segment
+		 * @return the number of terms
+		 */
+		public int getTermCount() {
+			return termCount;
+		}
+
+	}
+
+	/**
+	 * A term and its lines, ready to be written
+	 */
+	private static class Entry {
+
+		private final byte[] term;
+		private final PostingsList lines;
+
+		/**
+		 * Create an Entry
+		 * @param term the term in UTF-8
+		 * @param lines the lines of the term
+		 */
+		Entry(byte[] term, PostingsList lines) {
+			this.term = term;
+			this.lines = lines;
+		}
+
+		/**
+		 * Get the number of bytes the entry takes in a segment
+		 * @return the size in bytes
+		 */
+		long size() {
+			return PostingsList.varIntSize(term.length) + term.length + PostingsList.varIntSize(lines.size())
+					+ PostingsList.varLongSize(lines.getOccurrenceCount()) + lines.encodedSize();
+		}
+
+	}
+
+	/**
+	 * Create a ConcordanceIndexFile for a file, which need not exist yet
+	 * @param file the index file
+	 */
+	public ConcordanceIndexFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Get the index file
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Check whether the index file exists
+	 * @return true if there is an index to append to
+	 */
+	public boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * Replace the index file with a single segment holding a whole concordance. The file is written under a
+	 * temporary name and then moved into place, so a failed write leaves any old index untouched and removes the
+	 * temporary file
+	 * @param cds the concordance to save
+	 * @param firstLine the first line indexed
+	 * @param lastLine the last line indexed
+	 * @param inputOffset the offset in the input file just past the last line indexed
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(ConcordanceDataStructure cds, int firstLine, int lastLine, long inputOffset) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp.toPath()), WRITE_BUFFER_SIZE))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(cds.getTermNormalizer().isComposing() ? NFC_NORMALIZER : DEFAULT_NORMALIZER);
+				writeSegment(out, cds, firstLine, lastLine, inputOffset);
+			}
+
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			//Once moved there is nothing under the temporary name, so this only removes a failed write
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Append a delta segment to the index file. Any partly written segment left at the end of the file by a
+	 * failed append is overwritten
+	 * @param cds the concordance of the new lines only
+	 * @param firstLine the first line indexed by the delta
+	 * @param lastLine the last line indexed by the delta
+	 * @param inputOffset the offset in the input file just past the last line indexed
+	 * @throws IOException if the file is not a valid index or cannot be written
+	 * @throws IllegalArgumentException if the CDS does not use the normalizer the index was built with
+	 */
+	public void append(ConcordanceDataStructure cds, int firstLine, int lastLine, long inputOffset) throws IOException {
+		checkNormalizer(cds);
+		ArrayList<Segment> segments = getSegments();
+		Segment last = segments.get(segments.size() - 1);
+		long validEnd = last.position + last.length;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(validEnd);
+			channel.position(validEnd);
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
+			writeSegment(out, cds, firstLine, lastLine, inputOffset);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Read the headers of every complete segment in the index file
+	 * @return the segments in file order. There is always at least one
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	public ArrayList<Segment> getSegments() throws IOException {
+		ArrayList<Segment> segments = new ArrayList<>();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+			readHeader(channel, header);
+
+			//Walk the segments, stopping at the end of the file or at a segment that was not completely written
+			for (long position = HEADER_SIZE; position + SEGMENT_HEADER_SIZE <= size; ) {
+				readFully(channel, header, position, SEGMENT_HEADER_SIZE);
+				long length = header.getLong(4);
+				if (header.getInt(0) != SEGMENT_MAGIC || length < SEGMENT_HEADER_SIZE || position + length > size) break;
+
+				segments.add(new Segment(position, length, header.getInt(12), header.getInt(16), header.getLong(20), header.getInt(28)));
+				position += length;
+			}
+		}
+
+		if (segments.isEmpty()) throw new IOException("Concordance index has no complete segment: " + file);
+		return segments;
+	}
+
+	/**
+	 * Get the normalizer the terms of the index were normalized with. A CDS loaded from the index, appended to it
+	 * or looking words up in it must use the same normalizer
+	 * @return the normalizer
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	public TermNormalizer getTermNormalizer() throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readHeader(channel, header);
+
+			switch (header.getInt(8)) {
+				case DEFAULT_NORMALIZER:
+					return TermNormalizer.DEFAULT;
+				case NFC_NORMALIZER:
+					return TermNormalizer.NFC;
+				default:
+					throw new IOException("Unknown term normalizer " + header.getInt(8) + " in " + file);
+			}
+		}
+	}
+
+	/**
+	 * Get the header of the last segment, which records where the next append continues
+	 * @return the last segment
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	public Segment getLastSegment() throws IOException {
+		ArrayList<Segment> segments = getSegments();
+		return segments.get(segments.size() - 1);
+	}
+
+	/**
+	 * Add every term of every segment to a CDS
+	 * @param cds the CDS receiving the terms and their lines
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 * @throws IllegalArgumentException if the CDS does not use the normalizer the index was built with
+	 */
+	public void loadInto(ConcordanceDataStructure cds) throws IOException {
+		checkNormalizer(cds);
+		ArrayList<Segment> segments = getSegments();
+		byte[] term = new byte[64];
+		int[] lines = new int[64];
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (Segment segment : segments) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment.position, segment.length);
+
+				//Entries follow the header and the offset table, and run to the end of the segment
+				buffer.position(SEGMENT_HEADER_SIZE + (segment.termCount + 1) * 4);
+				for (int i = 0; i < segment.termCount; i++) {
+					int termLength = readVarInt(buffer);
+					if (termLength > term.length) term = new byte[Math.max(termLength, term.length * 2)];
+					buffer.get(term, 0, termLength);
+
+					int count = readVarInt(buffer);
+					long occurrences = readVarLong(buffer);
+					if (count > lines.length) lines = new int[Math.max(count, lines.length * 2)];
+					buffer.position(PostingsList.decode(buffer, buffer.position(), count, lines, 0));
+
+					cds.addPostings(new String(term, 0, termLength, StandardCharsets.UTF_8), lines, count, occurrences);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merge every segment of the index file into a single segment. Lookups then search one term directory
+	 * instead of one per segment
+	 * @throws IOException if the file cannot be read or written, or is not a valid index
+	 */
+	public void compact() throws IOException {
+		ArrayList<Segment> segments = getSegments();
+		if (segments.size() == 1) return;
+
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(segments.get(0).termCount);
+		cds.setTermNormalizer(getTermNormalizer());
+		loadInto(cds);
+
+		Segment last = segments.get(segments.size() - 1);
+		write(cds, segments.get(0).firstLine, last.lastLine, last.inputOffset);
+	}
+
+	/**
+	 * Write one segment holding every term of a CDS
+	 * @param out the output, positioned where the segment starts
+	 * @param cds the terms to write
+	 * @param firstLine the first line indexed by the segment
+	 * @param lastLine the last line indexed by the segment
+	 * @param inputOffset the offset in the input file just past the last line indexed
+	 * @throws IOException if the output fails or the segment would be too large to map
+	 */
+	private static void writeSegment(DataOutputStream out, ConcordanceDataStructure cds, int firstLine, int lastLine,
+			long inputOffset) throws IOException {
+
+		//Collect the terms as UTF-8 and sort them by their bytes, the order a reader binary searches in
+		Entry[] entries = new Entry[cds.getTermCount()];
+		TermDictionary dictionary = cds.getDictionary();
+		for (int id = 0; id < entries.length; id++) {
+			entries[id] = new Entry(dictionary.getTerm(id).getBytes(StandardCharsets.UTF_8), cds.postingsOf(id));
+		}
+		Arrays.sort(entries, (a, b) -> Arrays.compareUnsigned(a.term, b.term));
+
+		long length = SEGMENT_HEADER_SIZE + (entries.length + 1) * 4L;
+		long entriesLength = 0;
+		for (Entry entry : entries) {
+			entriesLength += entry.size();
+		}
+		length += entriesLength;
+		if (length > Integer.MAX_VALUE) throw new IOException("Concordance index segment is too large: " + length + " bytes");
+
+		out.writeInt(SEGMENT_MAGIC);
+		out.writeLong(length);
+		out.writeInt(firstLine);
+		out.writeInt(lastLine);
+		out.writeLong(inputOffset);
+		out.writeInt(entries.length);
+
+		int offset = 0;
+		for (Entry entry : entries) {
+			out.writeInt(offset);
+			offset += (int) entry.size();
+		}
+		out.writeInt(offset);
+
+		for (Entry entry : entries) {
+			PostingsList.writeVarInt(out, entry.term.length);
+			out.write(entry.term);
+			PostingsList.writeVarInt(out, entry.lines.size());
+			PostingsList.writeVarLong(out, entry.lines.getOccurrenceCount());
+			entry.lines.writeEncoded(out);
+		}
+	}
+
+	/**
+	 * Read an unsigned variable-length int, as written by PostingsList.writeVarInt, from a buffer's position, and
+	 * move the position past it
+	 * @param buffer the buffer to read from
+	 * @return the value
+	 */
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = PostingsList.readVarInt(buffer, buffer.position());
+		buffer.position(buffer.position() + PostingsList.varIntSize(value));
+		return value;
+	}
+
+	/**
+	 * Read an unsigned variable-length long, as written by PostingsList.writeVarLong, from a buffer's position,
+	 * and move the position past it
+	 * @param buffer the buffer to read from
+	 * @return the value
+	 */
+	private static long readVarLong(ByteBuffer buffer) {
+		long value = PostingsList.readVarLong(buffer, buffer.position());
+		buffer.position(buffer.position() + PostingsList.varLongSize(value));
+		return value;
+	}
+
+	/**
+	 * Check that a CDS uses the normalizer the index was built with
+	 * @param cds the CDS to check
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 * @throws IllegalArgumentException if the CDS uses another normalizer
+	 */
+	private void checkNormalizer(ConcordanceDataStructure cds) throws IOException {
+		if (cds.getTermNormalizer() != getTermNormalizer()) {
+			throw new IllegalArgumentException("The concordance index was built with another normalizer: " + file);
+		}
+	}
+
+	/**
+	 * Read and check the file header
+	 * @param channel the index file
+	 * @param header a buffer of at least HEADER_SIZE bytes, which receives the header
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	private void readHeader(FileChannel channel, ByteBuffer header) throws IOException {
+		readFully(channel, header, 0, HEADER_SIZE);
+		if (header.getInt(0) != MAGIC) throw new IOException("Not a concordance index: " + file);
+
+		int version = header.getInt(4);
+		if (version != VERSION) throw new IOException("Unsupported concordance index version " + version);
+	}
+
+	/**
+	 * Read a range of a file into the start of a buffer
+	 * @param channel the file to read from
+	 * @param buffer the buffer to fill
+	 * @param position the offset of the first byte to read
+	 * @param length the number of bytes to read
+	 * @throws IOException if the file ends before the range does
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Concordance index is truncated");
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * Answers lookups against a concordance index file written by ConcordanceIndexFile without loading it into a
+ * ConcordanceDataStructure.
+ *
+ * Opening a reader reads the segment headers and memory-maps each segment, which takes a few milliseconds
+ * however large the index is. Nothing else is read up front: a lookup binary searches each segment's term
+ * offset table, comparing the UTF-8 bytes of the word directly against the mapped bytes, and decodes only the
+ * postings of the term it finds. The reader's heap footprint is a mapped buffer per segment, so many readers
+ * can be open at once. The operating system pages the file in as lookups touch it.
+ *
+ * Words are looked up under the TermNormalizer recorded in the index, the one its terms were normalized with.
+ *
+ * A reader is immutable and only reads its buffers at absolute positions, so it can be shared between threads.
+ * It sees the segments that existed when it was opened; open a new reader to see later appends. The mappings
+ * are released when the reader is garbage collected.
+ */
+public class ConcordanceIndexReader {
+
+	private final MappedByteBuffer[] segments;
+	private final int[] termCounts;
+	private final TermNormalizer termNormalizer;
+
+	/**
+	 * Open a reader over a concordance index file
+	 * @param index the index file to read
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	public ConcordanceIndexReader(File index) throws IOException {
+		ConcordanceIndexFile indexFile = new ConcordanceIndexFile(index);
+		ArrayList<ConcordanceIndexFile.Segment> headers = indexFile.getSegments();
+		termNormalizer = indexFile.getTermNormalizer();
+		segments = new MappedByteBuffer[headers.size()];
+		termCounts = new int[headers.size()];
+
+		//A mapping stays valid after its channel is closed
+		try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+			for (int i = 0; i < segments.length; i++) {
+				ConcordanceIndexFile.Segment header = headers.get(i);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, header.getPosition(), header.getLength());
+				termCounts[i] = header.getTermCount();
+			}
+		}
+	}
+
+	/**
+	 * Get the lines on which a word occurs. The word is normalized by the index's normalizer, so "Hello," finds
+	 * the lines of "hello"
+	 * @param word the word to look up
+	 * @return the lines in ascending order, or an empty array if the word is not in the concordance
+	 */
+	public int[] getLines(String word) {
+		byte[] key = termNormalizer.normalize(word).getBytes(StandardCharsets.UTF_8);
+
+		//Find the word's entry in each segment and add up its lines
+		int[] entries = new int[segments.length];
+		int total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			entries[i] = find(i, key);
+			if (entries[i] >= 0) total += lineCountAt(segments[i], entries[i]);
+		}
+
+		//Segments cover ascending ranges of lines, so their lines can simply be placed one after another
+		int[] lines = new int[total];
+		int offset = 0;
+		for (int i = 0; i < segments.length; i++) {
+			if (entries[i] < 0) continue;
+
+			MappedByteBuffer segment = segments[i];
+			int termLength = PostingsList.readVarInt(segment, entries[i]);
+			int position = entries[i] + PostingsList.varIntSize(termLength) + termLength;
+			int count = PostingsList.readVarInt(segment, position);
+			position += PostingsList.varIntSize(count);
+
+			//Skip the occurrence count to reach the lines
+			position += PostingsList.varLongSize(PostingsList.readVarLong(segment, position));
+			PostingsList.decode(segment, position, count, lines, offset);
+			offset += count;
+		}
+		return lines;
+	}
+
+	/**
+	 * Get the lines on which a word occurs, in the form returned by ConcordanceDataStructure.getPageNumbers
+	 * @param word the word to look up
+	 * @return a LinkedList of the lines in ascending order, empty if the word is not in the concordance
+	 */
+	public LinkedList<Integer> getPageNumbers(String word) {
+		LinkedList<Integer> pages = new LinkedList<>();
+		for (int line : getLines(word)) {
+			pages.add(line);
+		}
+		return pages;
+	}
+
+	/**
+	 * Get the number of lines on which a word occurs, without decoding the lines
+	 * @param word the word to look up
+	 * @return the number of lines, or 0 if the word is not in the concordance
+	 */
+	public int getLineCount(String word) {
+		byte[] key = termNormalizer.normalize(word).getBytes(StandardCharsets.UTF_8);
+
+		int total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			int entry = find(i, key);
+			if (entry >= 0) total += lineCountAt(segments[i], entry);
+		}
+		return total;
+	}
+
+	/**
+	 * Check whether a word is in the concordance
+	 * @param word the word to look up
+	 * @return true if the word occurs on at least one line
+	 */
+	public boolean contains(String word) {
+		byte[] key = termNormalizer.normalize(word).getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i < segments.length; i++) {
+			if (find(i, key) >= 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the normalizer the index's terms were normalized with, which lookups use as well
+	 * @return the normalizer
+	 */
+	public TermNormalizer getTermNormalizer() {
+		return termNormalizer;
+	}
+
+	/**
+	 * Get the number of segments in the index
+	 * @return the number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Binary search a segment's offset table for a term
+	 * @param segment the index of the segment
+	 * @param key the term in UTF-8
+	 * @return the position of the term's entry in the segment buffer, or -1 if the segment does not hold it
+	 */
+	private int find(int segment, byte[] key) {
+		MappedByteBuffer buffer = segments[segment];
+		int entriesStart = ConcordanceIndexFile.SEGMENT_HEADER_SIZE + (termCounts[segment] + 1) * 4;
+
+		int low = 0, high = termCounts[segment] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = entriesStart + buffer.getInt(ConcordanceIndexFile.SEGMENT_HEADER_SIZE + mid * 4);
+
+			int comparison = compareTerm(buffer, entry, key);
+			if (comparison < 0) low = mid + 1;
+			else if (comparison > 0) high = mid - 1;
+			else return entry;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compare the term of an entry with a key, byte by byte as unsigned values
+	 * @param buffer the segment holding the entry
+	 * @param entry the position of the entry
+	 * @param key the term being searched for, in UTF-8
+	 * @return a negative number, zero or a positive number as the entry's term is less than, equal to or
+	 * greater than the key
+	 */
+	private static int compareTerm(MappedByteBuffer buffer, int entry, byte[] key) {
+		int length = PostingsList.readVarInt(buffer, entry);
+		int start = entry + PostingsList.varIntSize(length);
+
+		for (int i = 0; i < length && i < key.length; i++) {
+			int difference = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+			if (difference != 0) return difference;
+		}
+		return length - key.length;
+	}
+
+	/**
+	 * Get the number of lines of an entry
+	 * @param buffer the segment holding the entry
+	 * @param entry the position of the entry
+	 * @return the number of lines
+	 */
+	private static int lineCountAt(MappedByteBuffer buffer, int entry) {
+		int length = PostingsList.readVarInt(buffer, entry);
+		return PostingsList.readVarInt(buffer, entry + PostingsList.varIntSize(length) + length);
+	}
+
+}
@@ -0,0 +1,121 @@
+import java.util.Comparator;
+
+/**
+ * The order in which a concordance lists its words.
+ *
+ * A concordance line is a word, a colon, and its line numbers. Lines are ordered as if their text were compared
+ * with every apostrophe removed. This class reproduces that order from a precomputed sort key per word (the word
+ * without apostrophes) so that no line has to be built or stripped during a sort:
+ * <ul>
+ * <li>Words whose keys differ are ordered by their keys, each followed by the ':' that ends it in the line.
+ * So "ab0" sorts before "ab", because '0' sorts before ':'.</li>
+ * <li>Words whose keys are equal (such as "dont" and "don't") are ordered by the text of their line numbers,
+ * and then by the words themselves.</li>
+ * </ul>
+ */
+public final class ConcordanceOrder {
+
+	/**
+	 * Orders Entries for a concordance listing
+	 */
+	public static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return ConcordanceOrder.compare(e1.key, e1.word, e1.postings, e2.key, e2.word, e2.postings);
+		}
+	};
+
+	/**
+	 * Not instantiated
+	 */
+	private ConcordanceOrder() {
+	}
+
+	/**
+	 * Get the sort key of a word
+	 * @param word the word
+	 * @return the word with every apostrophe removed, or the word itself if it has none
+	 */
+	public static String sortKey(String word) {
+		return word.indexOf('\'') < 0 ? word : word.replace("'", "");
+	}
+
+	/**
+	 * Compare two sort keys, each as if it were followed by a ':'
+	 * @param key1 the first sort key
+	 * @param key2 the second sort key
+	 * @return a negative number, zero or a positive number as the first key sorts before, with, or after the second
+	 */
+	public static int compareKeys(String key1, String key2) {
+		int length = Math.min(key1.length(), key2.length());
+		for (int i = 0; i < length; i++) {
+			char c1 = key1.charAt(i), c2 = key2.charAt(i);
+			if (c1 != c2) return c1 - c2;
+		}
+
+		//One key is a prefix of the other. The shorter key continues with its ':'
+		if (key1.length() == key2.length()) return 0;
+		return key1.length() < key2.length() ? ':' - key2.charAt(length) : key1.charAt(length) - ':';
+	}
+
+	/**
+	 * Compare two words of a concordance
+	 * @param key1 the sort key of the first word
+	 * @param word1 the first word
+	 * @param postings1 the line numbers of the first word
+	 * @param key2 the sort key of the second word
+	 * @param word2 the second word
+	 * @param postings2 the line numbers of the second word
+	 * @return a negative number, zero or a positive number as the first word is listed before, with, or after the second
+	 */
+	public static int compare(String key1, String word1, PostingsList postings1,
+			String key2, String word2, PostingsList postings2) {
+		int result = compareKeys(key1, key2);
+		if (result != 0) return result;
+
+		//Equal keys only happen for words that differ by apostrophes, so formatting the line numbers here is rare
+		StringBuilder lines1 = new StringBuilder(), lines2 = new StringBuilder();
+		postings1.appendTo(lines1);
+		postings2.appendTo(lines2);
+		result = lines1.toString().compareTo(lines2.toString());
+
+		return result != 0 ? result : word1.compareTo(word2);
+	}
+
+	/**
+	 * A word of a concordance together with its precomputed sort key, for sorting
+	 */
+	public static class Entry {
+		private final String key;
+		private final String word;
+		private final PostingsList postings;
+
+		/**
+		 * Create an Entry
+		 * @param word the word
+		 * @param postings the line numbers of the word
+		 */
+		public Entry(String word, PostingsList postings) {
+			this.key = sortKey(word);
+			this.word = word;
+			this.postings = postings;
+		}
+
+		/**
+		 * Get the word of this Entry
+		 * @return the word
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * Get the line numbers of this Entry
+		 * @return the line numbers
+		 */
+		public PostingsList getPostings() {
+			return postings;
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics for a concordance build, readable directly or over JMX once registered.
+ *
+ * Counts that change on every token (tokens read and dropped) are plain fields of the ConcordanceDataStructure
+ * being tracked, so the add path pays a single increment for them. Everything else is computed only when it is
+ * asked for: distinct terms, load factor, resize count and postings bytes are read from the structure, and the
+ * probe length histogram is worked out by walking the hash table. Values read while a build is running on
+ * another thread are approximate.
+ *
+ * Phase times are recorded once per phase by ConcordanceDataManager and ConcordanceDataStructure. Splitting text
+ * into terms and adding them to the hash table happen together in a single pass, so both count as TOKENIZE.
+ * INDEX is the time spent merging partial concordances; in a parallel build the merges run on the workers while
+ * other blocks are still being tokenized, so it overlaps TOKENIZE. When a file is memory-mapped its bytes are
+ * paged in as they are tokenized, so that reading also counts as TOKENIZE. In a directory build, files are
+ * read and tokenized on many threads at once and each phase totals the time of every thread, so READ and
+ * TOKENIZE can each exceed the time the build took.
+ *
+ * A directory build indexes each document into a structure of its own, so there is no single structure to read
+ * from. Each document's token counts are added in as soon as it has been indexed, and distinct terms are read
+ * from the combined concordance once the documents have been merged. Load factor, probe lengths, resizes and
+ * postings bytes describe one hash table, and read 0 for a directory build.
+ */
+public class ConcordanceStats implements ConcordanceStatsMBean {
+
+	/**
+	 * The phases of a build that are timed
+	 */
+	public enum Phase {
+		READ, TOKENIZE, INDEX, SORT, WRITE
+	}
+
+	//Number of elements in the probe length histogram
+	public static final int HISTOGRAM_SIZE = 16;
+
+	//Total time recorded for each phase, in nanoseconds
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+	//The structure whose counts are reported, or null before a build and during a directory build
+	private volatile ConcordanceDataStructure structure;
+
+	//Token counts of the documents of a directory build, and the concordance they were combined into
+	private final LongAdder documentTokensAdded = new LongAdder();
+	private final LongAdder documentTokensDroppedByCleanUp = new LongAdder();
+	private final LongAdder documentTokensDroppedByFilter = new LongAdder();
+	private volatile MultiDocumentConcordance documents;
+
+	/**
+	 * Report the counts of a structure. Its tokens, terms and table are reported from now on
+	 * @param structure the structure to track
+	 */
+	void track(ConcordanceDataStructure structure) {
+		clearDocuments();
+		this.structure = structure;
+	}
+
+	/**
+	 * Start reporting the counts of a directory build, which are added a document at a time by addDocument
+	 */
+	void trackDocuments() {
+		clearDocuments();
+		this.structure = null;
+	}
+
+	/**
+	 * Add the token counts of a document of a directory build
+	 * @param cds the structure the document was indexed into
+	 */
+	void addDocument(ConcordanceDataStructure cds) {
+		documentTokensAdded.add(cds.getTokensAdded());
+		documentTokensDroppedByCleanUp.add(cds.getTokensDroppedByCleanUp());
+		documentTokensDroppedByFilter.add(cds.getTokensDroppedByFilter());
+	}
+
+	/**
+	 * Report the distinct terms of a directory build once its documents have been combined
+	 * @param concordance the concordance of every document
+	 */
+	void track(MultiDocumentConcordance concordance) {
+		this.documents = concordance;
+	}
+
+	/**
+	 * Forget the counts of any directory build
+	 */
+	private void clearDocuments() {
+		documents = null;
+		documentTokensAdded.reset();
+		documentTokensDroppedByCleanUp.reset();
+		documentTokensDroppedByFilter.reset();
+	}
+
+	/**
+	 * Add the time since a phase started to the phase's total
+	 * @param phase the phase that has finished
+	 * @param startNanos the value of System.nanoTime() when the phase started
+	 * @return the current value of System.nanoTime(), from which a following phase can be timed
+	 */
+	public long recordPhase(Phase phase, long startNanos) {
+		long now = System.nanoTime();
+		phaseNanos.addAndGet(phase.ordinal(), now - startNanos);
+		return now;
+	}
+
+	/**
+	 * Get the total time recorded for a phase
+	 * @param phase the phase
+	 * @return the time in milliseconds
+	 */
+	public long getPhaseMillis(Phase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()));
+	}
+
+	@Override
+	public long getTokenCount() {
+		long count = documentTokensAdded.sum() + getTokensDroppedByCleanUp() + getTokensDroppedByFilter();
+		ConcordanceDataStructure cds = structure;
+		return cds == null ? count : count + cds.getTokensAdded();
+	}
+
+	@Override
+	public double getTokensPerSecond() {
+		long nanos = phaseNanos.get(Phase.TOKENIZE.ordinal());
+		return nanos == 0 ? 0 : getTokenCount() * 1e9 / nanos;
+	}
+
+	@Override
+	public long getTokensDroppedByCleanUp() {
+		ConcordanceDataStructure cds = structure;
+		long count = documentTokensDroppedByCleanUp.sum();
+		return cds == null ? count : count + cds.getTokensDroppedByCleanUp();
+	}
+
+	@Override
+	public long getTokensDroppedByFilter() {
+		ConcordanceDataStructure cds = structure;
+		long count = documentTokensDroppedByFilter.sum();
+		return cds == null ? count : count + cds.getTokensDroppedByFilter();
+	}
+
+	@Override
+	public int getDistinctTerms() {
+		ConcordanceDataStructure cds = structure;
+		if (cds != null) return cds.getTermCount();
+
+		MultiDocumentConcordance concordance = documents;
+		return concordance == null ? 0 : concordance.getTermCount();
+	}
+
+	@Override
+	public double getLoadFactor() {
+		ConcordanceDataStructure cds = structure;
+		return cds == null ? 0 : (double) cds.getTermCount() / cds.getTableSize();
+	}
+
+	@Override
+	public long[] getProbeLengthHistogram() {
+		ConcordanceDataStructure cds = structure;
+		return cds == null ? new long[HISTOGRAM_SIZE] : cds.getDictionary().probeLengthHistogram(HISTOGRAM_SIZE);
+	}
+
+	@Override
+	public int getResizeCount() {
+		ConcordanceDataStructure cds = structure;
+		return cds == null ? 0 : cds.getDictionary().getResizeCount();
+	}
+
+	@Override
+	public long getPostingsBytes() {
+		ConcordanceDataStructure cds = structure;
+		return cds == null ? 0 : cds.getPostingsBytes();
+	}
+
+	@Override
+	public long getReadMillis() {
+		return getPhaseMillis(Phase.READ);
+	}
+
+	@Override
+	public long getTokenizeMillis() {
+		return getPhaseMillis(Phase.TOKENIZE);
+	}
+
+	@Override
+	public long getIndexMillis() {
+		return getPhaseMillis(Phase.INDEX);
+	}
+
+	@Override
+	public long getSortMillis() {
+		return getPhaseMillis(Phase.SORT);
+	}
+
+	@Override
+	public long getWriteMillis() {
+		return getPhaseMillis(Phase.WRITE);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < phaseNanos.length(); i++) {
+			phaseNanos.set(i, 0);
+		}
+	}
+
+	/**
+	 * Register these stats with the platform MBean server
+	 * @param name the name distinguishing these stats from others, for example the name of the input
+	 * @return the name the stats were registered under, for unregistering them later
+	 * @throws JMException if the stats cannot be registered, for example because the name is already taken
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("concordance:type=ConcordanceStats,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Remove stats from the platform MBean server
+	 * @param objectName the name returned when the stats were registered
+	 * @throws JMException if the name is not registered
+	 */
+	public static void unregister(ObjectName objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * The management interface of ConcordanceStats, through which a concordance build can be watched over JMX.
+ * Times are in milliseconds.
+ */
+public interface ConcordanceStatsMBean {
+
+	/**
+	 * Get the number of tokens read, whether kept or dropped
+	 * @return the number of tokens
+	 */
+	public long getTokenCount();
+
+	/**
+	 * Get the rate at which tokens were read during the tokenize phase
+	 * @return tokens per second, or 0 if no tokenize time has been recorded
+	 */
+	public double getTokensPerSecond();
+
+	/**
+	 * Get the number of tokens dropped because nothing of them was left after punctuation was removed
+	 * @return the number of tokens
+	 */
+	public long getTokensDroppedByCleanUp();
+
+	/**
+	 * Get the number of tokens dropped by the stop word filter, for being too short or a stop word
+	 * @return the number of tokens
+	 */
+	public long getTokensDroppedByFilter();
+
+	/**
+	 * Get the number of distinct terms in the concordance
+	 * @return the number of terms
+	 */
+	public int getDistinctTerms();
+
+	/**
+	 * Get the fraction of hash table slots in use
+	 * @return the load factor
+	 */
+	public double getLoadFactor();
+
+	/**
+	 * Get how many probes finding each term takes. Element i counts the terms found on probe i + 1, and the
+	 * last element counts every term that takes that many probes or more
+	 * @return the probe length histogram
+	 */
+	public long[] getProbeLengthHistogram();
+
+	/**
+	 * Get the number of times the hash table has grown
+	 * @return the number of resizes
+	 */
+	public int getResizeCount();
+
+	/**
+	 * Get the number of bytes used to hold line numbers
+	 * @return the size of every term's postings, in bytes
+	 */
+	public long getPostingsBytes();
+
+	/**
+	 * Get the time spent reading input
+	 * @return the read phase time
+	 */
+	public long getReadMillis();
+
+	/**
+	 * Get the time spent splitting input into terms and adding them to the hash table
+	 * @return the tokenize phase time
+	 */
+	public long getTokenizeMillis();
+
+	/**
+	 * Get the time spent merging partial concordances
+	 * @return the index phase time
+	 */
+	public long getIndexMillis();
+
+	/**
+	 * Get the time spent sorting terms for output
+	 * @return the sort phase time
+	 */
+	public long getSortMillis();
+
+	/**
+	 * Get the time spent formatting and writing output
+	 * @return the write phase time
+	 */
+	public long getWriteMillis();
+
+	/**
+	 * Clear the recorded phase times
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,53 @@
+/**
+ * A destination for the normalized terms produced by a ConcordanceTokenizer. Implemented by the concordance
+ * data structures, which decide which terms to keep and record the line each kept term occurs on.
+ */
+public interface ConcordanceTermSink {
+
+	/**
+	 * Check whether a normalized term should be left out of the concordance
+	 * @param chars a buffer holding the term, cleaned up and lower-cased
+	 * @param length the number of characters in the term
+	 * @return true if the term is INVALID, and should be excluded from the concordance
+	 */
+	public boolean isInvalid(char[] chars, int length);
+
+	/**
+	 * Add a term that has already been cleaned up, validated and lower-cased. The buffer is reused by the caller
+	 * once this returns, so it must be copied if the term is kept
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 */
+	public void addNormalized(char[] chars, int length, int lineNum);
+
+	/**
+	 * Add a term that has already been cleaned up, validated and lower-cased, together with its position among the
+	 * words of its line. Called by ConcordanceTokenizer. Sinks that do not record positions ignore the position
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 * @param position the index of the term among the words of the line, counting from 0. Words left out by the
+	 * stop word filter are counted, so the positions of the words either side of one differ by 2
+	 */
+	public default void addNormalized(char[] chars, int length, int lineNum, int position) {
+		addNormalized(chars, length, lineNum);
+	}
+
+	/**
+	 * Get the normalizer that turns the words of text into the terms given to this sink. Read once, when a
+	 * tokenizer is created for the sink
+	 * @return the normalizer, TermNormalizer.DEFAULT unless the sink chooses another
+	 */
+	public default TermNormalizer getTermNormalizer() {
+		return TermNormalizer.DEFAULT;
+	}
+
+	/**
+	 * Note that a token was dropped because nothing of it was left once punctuation was removed. Does nothing
+	 * unless the sink keeps statistics
+	 */
+	public default void droppedByCleanUp() {
+	}
+
+}
@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Splits text into words and normalizes each word for a ConcordanceDataStructure (or any other
+ * ConcordanceTermSink) without creating a String per word. Text can be supplied as a CharSequence, a char array
+ * or a buffer of UTF-8 bytes, in as many pieces as needed: a word, line or multi-byte character split between
+ * two pieces is stitched back together.
+ *
+ * Words are separated by spaces and lines end with \n, \r, \r\n or any of the other line terminators that
+ * Scanner.nextLine recognises: next line (U+0085), line separator (U+2028) and paragraph separator (U+2029).
+ * Within a word only letters, digits and
+ * apostrophes are kept. Words are normalized by the CDS's TermNormalizer: ASCII characters are filtered and
+ * lower-cased as they are read, and a word holding other characters is finished by the normalizer's Unicode
+ * handling. A finished word is checked against the CDS's stop word filter and handed to the CDS as a range of a
+ * reusable buffer, along with its line and its position among the words of the line. The CDS only allocates a
+ * String when the word is new to its table.
+ *
+ * A tokenizer is not thread-safe. Each thread feeding text should use its own tokenizer.
+ */
+public class ConcordanceTokenizer {
+
+	private final ConcordanceTermSink cds;
+	private final TermNormalizer termNormalizer;
+
+	//Current word being collected, with punctuation already stripped
+	private char[] token;
+	private int tokenLength;
+	private boolean tokenIsAscii;
+
+	//Whether the current word had any characters at all, kept or stripped
+	private boolean tokenHasContent;
+
+	//Whether the current word had any characters before the multi-byte character being decoded, in case that
+	//character turns out to end the line
+	private boolean tokenHadContent;
+
+	//Line tracking state
+	private int lineNum;
+
+	//Index among the words of the current line of the next word to finish. Punctuation-only tokens are not words
+	private int position;
+
+	//The line of the last term given to addTerm, and the position of the next term given for the same line
+	private int termLine = Integer.MIN_VALUE;
+	private int termPosition;
+	private boolean lineHasContent;
+	private boolean lastWasCarriageReturn;
+
+	//UTF-8 decoding state for a multi-byte character that is still being read
+	private int codePoint;
+	private int remainingBytes;
+	private int minCodePoint;
+
+	/**
+	 * Create a tokenizer that feeds a CDS, numbering lines from 1
+	 * @param cds the CDS receiving the words
+	 */
+	public ConcordanceTokenizer(ConcordanceTermSink cds) {
+		this(cds, 1);
+	}
+
+	/**
+	 * Create a tokenizer that feeds a CDS, numbering lines from a given line
+	 * @param cds the CDS receiving the words
+	 * @param firstLine the line number given to the first line of text
+	 */
+	public ConcordanceTokenizer(ConcordanceTermSink cds, int firstLine) {
+		this.cds = cds;
+		this.termNormalizer = cds.getTermNormalizer();
+		this.token = new char[64];
+		this.tokenIsAscii = true;
+		this.lineNum = firstLine;
+	}
+
+	/**
+	 * Tokenize a range of characters
+	 * @param text the characters to tokenize
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 */
+	public void tokenize(CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			accept(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Tokenize a range of a char array
+	 * @param text the characters to tokenize
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 */
+	public void tokenize(char[] text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			accept(text[i]);
+		}
+	}
+
+	/**
+	 * Tokenize a range of UTF-8 bytes. ASCII bytes are handled without any decoding. Malformed sequences are
+	 * treated as punctuation and stripped
+	 * @param bytes the buffer holding the bytes. Its position and limit are not used or changed
+	 * @param start the index of the first byte
+	 * @param end the index after the last byte
+	 */
+	public void tokenize(ByteBuffer bytes, int start, int end) {
+		for (int i = start; i < end; i++) {
+			byte b = bytes.get(i);
+
+			//ASCII fast path
+			if (b >= 0) {
+				remainingBytes = 0;
+				accept((char) b);
+			}
+			else acceptMultiByte(b);
+		}
+	}
+
+	/**
+	 * Finish tokenizing. The final word is handed to the CDS and the final line is counted even if it has
+	 * no line terminator. The tokenizer can then be reused for more text, continuing the line numbering
+	 * @return the number of the last line read
+	 */
+	public int finish() {
+		remainingBytes = 0;
+		endToken();
+
+		//A final line without a terminator still counts as a line
+		if (lineHasContent) {
+			lineNum++;
+			lineHasContent = false;
+		}
+		position = 0;
+		lastWasCarriageReturn = false;
+
+		return lineNum - 1;
+	}
+
+	/**
+	 * Normalize a single term and add it to the CDS. Unlike tokenize, spaces and line terminators inside the
+	 * term are stripped like any other punctuation rather than splitting it. Terms added one at a time to the
+	 * same line are given positions in the order they are added
+	 * @param term the term to add
+	 * @param line the line number where the term occurs
+	 */
+	public void addTerm(CharSequence term, int line) {
+		for (int i = 0; i < term.length(); i++) {
+			keep(term.charAt(i));
+		}
+		tokenHasContent = term.length() > 0;
+
+		if (line != termLine) {
+			termLine = line;
+			termPosition = 0;
+		}
+
+		int currentLine = lineNum, currentPosition = position;
+		lineNum = line;
+		position = termPosition;
+		endToken();
+		termPosition = position;
+		lineNum = currentLine;
+		position = currentPosition;
+	}
+
+	/**
+	 * Process a single character of text
+	 * @param c the character to process
+	 */
+	private void accept(char c) {
+		if (c == '\n') {
+			//The \n of a \r\n pair was already counted by the \r
+			if (!lastWasCarriageReturn) endLine();
+			lastWasCarriageReturn = false;
+			return;
+		}
+		lastWasCarriageReturn = false;
+
+		if (c == '\r') {
+			endLine();
+			lastWasCarriageReturn = true;
+			return;
+		}
+
+		if (isOtherLineTerminator(c)) {
+			endLine();
+			return;
+		}
+
+		lineHasContent = true;
+		if (c == ' ') endToken();
+		else {
+			tokenHasContent = true;
+			keep(c);
+		}
+	}
+
+	/**
+	 * Process a non-ASCII byte of UTF-8 text
+	 * @param b the byte to process
+	 */
+	private void acceptMultiByte(byte b) {
+		lastWasCarriageReturn = false;
+		lineHasContent = true;
+
+		//Continuation byte: add it to the character being decoded. A stray one is simply stripped
+		if ((b & 0xC0) == 0x80) {
+			tokenHasContent = true;
+			if (remainingBytes == 0) return;
+			codePoint = (codePoint << 6) | (b & 0x3F);
+			if (--remainingBytes == 0) keepCodePoint();
+			return;
+		}
+
+		//Lead byte. Any unfinished character before it is malformed and dropped
+		tokenHadContent = tokenHasContent;
+		tokenHasContent = true;
+		if ((b & 0xE0) == 0xC0) {
+			codePoint = b & 0x1F;
+			remainingBytes = 1;
+			minCodePoint = 0x80;
+		}
+		else if ((b & 0xF0) == 0xE0) {
+			codePoint = b & 0x0F;
+			remainingBytes = 2;
+			minCodePoint = 0x800;
+		}
+		else if ((b & 0xF8) == 0xF0) {
+			codePoint = b & 0x07;
+			remainingBytes = 3;
+			minCodePoint = 0x10000;
+		}
+		else remainingBytes = 0;
+	}
+
+	/**
+	 * Keep a fully decoded multi-byte character if it is a letter or digit, or end the line if it is a line
+	 * terminator
+	 */
+	private void keepCodePoint() {
+		if (codePoint >= minCodePoint && isOtherLineTerminator(codePoint)) {
+			tokenHasContent = tokenHadContent;
+			endLine();
+			return;
+		}
+
+		//Overlong encodings and surrogates are malformed. Supplementary characters are stripped, as their
+		//surrogate halves are neither letters nor digits
+		if (codePoint >= minCodePoint && Character.isBmpCodePoint(codePoint)
+				&& !Character.isSurrogate((char) codePoint)) {
+			keep((char) codePoint);
+		}
+	}
+
+	/**
+	 * Append a character to the current word if the normalizer keeps it. ASCII characters are lower-cased here
+	 * @param c the character to check
+	 */
+	private void keep(char c) {
+		if (c < 128) {
+			c = TermNormalizer.foldAscii(c);
+			if (c == 0) return;
+		}
+		else if (termNormalizer.keepsNonAscii(c)) tokenIsAscii = false;
+		else return;
+
+		if (tokenLength == token.length) grow(tokenLength * 2);
+		token[tokenLength++] = c;
+	}
+
+	/**
+	 * Finish the current word. The word is normalized and, unless the CDS's filter rejects it, handed to the CDS
+	 */
+	private void endToken() {
+		if (tokenLength == 0) {
+
+			//Every character of the word was punctuation
+			if (tokenHasContent) {
+				cds.droppedByCleanUp();
+				tokenHasContent = false;
+			}
+			return;
+		}
+
+		//ASCII words were lower-cased as they were read. Anything else is finished by the normalizer, which
+		//may change the length of the word
+		if (!tokenIsAscii) {
+			String folded = termNormalizer.foldNonAscii(token, tokenLength);
+			if (folded.length() > token.length) grow(folded.length());
+			folded.getChars(0, folded.length(), token, 0);
+			tokenLength = folded.length();
+		}
+
+		if (!cds.isInvalid(token, tokenLength)) cds.addNormalized(token, tokenLength, lineNum, position);
+		position++;
+
+		tokenLength = 0;
+		tokenIsAscii = true;
+		tokenHasContent = false;
+	}
+
+	/**
+	 * Finish the current line and advance the line counter
+	 */
+	private void endLine() {
+		remainingBytes = 0;
+		endToken();
+		lineNum++;
+		position = 0;
+		lineHasContent = false;
+	}
+
+	/**
+	 * Check whether a character is one of the line terminators besides \n and \r: next line (U+0085), line
+	 * separator (U+2028) or paragraph separator (U+2029). Each ends a line on its own
+	 * @param c the character or code point
+	 * @return true if it is one of those terminators
+	 */
+	static boolean isOtherLineTerminator(int c) {
+		return c == 0x85 || c == 0x2028 || c == 0x2029;
+	}
+
+	/**
+	 * Grow the word buffer
+	 * @param capacity the smallest capacity needed
+	 */
+	private void grow(int capacity) {
+		char[] larger = new char[Math.max(capacity, token.length * 2)];
+		System.arraycopy(token, 0, larger, 0, tokenLength);
+		token = larger;
+	}
+
+}
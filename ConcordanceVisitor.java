@@ -0,0 +1,18 @@
+/**
+ * Receives the terms of a concordance one at a time from ConcordanceDataStructureInterface.forEach.
+ *
+ * The term and lines passed to visit are views over the concordance's own storage. They are only valid during
+ * the call: the term is a single reused object that is moved on to the next term, so copy it, for example with
+ * toString, if it has to be kept.
+ */
+@FunctionalInterface
+public interface ConcordanceVisitor {
+
+	/**
+	 * Visit one term
+	 * @param term the term's characters, valid only until visit returns
+	 * @param lines the term's line numbers in ascending order
+	 */
+	public void visit(CharSequence term, PostingsView lines);
+
+}
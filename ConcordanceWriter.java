@@ -0,0 +1,251 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes concordance lines ("word: 1, 2, 3" followed by a newline) straight into an OutputStream.
+ *
+ * Words and line numbers are encoded into one reusable byte buffer, which is written out whenever it fills, so
+ * writing a concordance takes time linear in its size and creates no String per line. Words are encoded by hand
+ * when they are ASCII or the charset is UTF-8; other words fall back to String.getBytes.
+ */
+public class ConcordanceWriter implements Closeable, Flushable {
+
+	//Size of the output buffer
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	//Longest encoding of an int: a sign and ten digits
+	private static final int MAX_INT_LENGTH = 11;
+
+	private final OutputStream out;
+	private final Charset charset;
+	private final boolean utf8;
+
+	private final byte[] buffer;
+	private int count;
+
+	//Reusable copy of the line numbers of the word being written
+	private int[] lines;
+
+	/**
+	 * Create a ConcordanceWriter that encodes words as UTF-8
+	 * @param out the stream to write to
+	 */
+	public ConcordanceWriter(OutputStream out) {
+		this(out, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create a ConcordanceWriter that encodes words in a given charset. The charset must encode ASCII as
+	 * single bytes, as nearly all do
+	 * @param out the stream to write to
+	 * @param charset the charset used for words
+	 */
+	public ConcordanceWriter(OutputStream out, Charset charset) {
+		this.out = out;
+		this.charset = charset;
+		this.utf8 = charset.equals(StandardCharsets.UTF_8);
+		this.buffer = new byte[BUFFER_SIZE];
+		this.lines = new int[16];
+	}
+
+	/**
+	 * Write one line of a concordance
+	 * @param word the word
+	 * @param postings the line numbers of the word
+	 * @throws IOException if the underlying stream fails
+	 */
+	public void write(String word, PostingsList postings) throws IOException {
+		writeWord(word);
+		ensure(2);
+		buffer[count++] = ':';
+		buffer[count++] = ' ';
+
+		//Copy the line numbers into the reusable array, growing it when a word has more lines than ever before
+		if (postings.size() > lines.length) lines = new int[Math.max(postings.size(), lines.length * 2)];
+		int size = postings.copyTo(lines, 0);
+
+		for (int i = 0; i < size; i++) {
+			ensure(MAX_INT_LENGTH + 2);
+			if (i > 0) {
+				buffer[count++] = ',';
+				buffer[count++] = ' ';
+			}
+			writeInt(lines[i]);
+		}
+
+		ensure(1);
+		buffer[count++] = '\n';
+	}
+
+	/**
+	 * Write one line of a multi-document concordance, in the format of DocumentPostingsList.appendTo
+	 * @param word the word
+	 * @param postings the documents and lines of the word
+	 * @param documentTable the table naming the documents
+	 * @throws IOException if the underlying stream fails
+	 */
+	public void write(String word, DocumentPostingsList postings, DocumentTable documentTable) throws IOException {
+		writeWord(word);
+		ensure(2);
+		buffer[count++] = ':';
+		buffer[count++] = ' ';
+
+		for (int block = 0; block < postings.getDocumentCount(); block++) {
+			if (block > 0) {
+				ensure(2);
+				buffer[count++] = ',';
+				buffer[count++] = ' ';
+			}
+			writeWord(documentTable.getName(postings.getDocument(block)));
+			ensure(2);
+			buffer[count++] = ' ';
+			buffer[count++] = '(';
+
+			//Copy the block's lines into the reusable array, growing it as write does
+			int size = postings.getLineCount(block);
+			if (size > lines.length) lines = new int[Math.max(size, lines.length * 2)];
+			postings.copyLines(block, lines, 0);
+
+			for (int i = 0; i < size; i++) {
+				ensure(MAX_INT_LENGTH + 2);
+				if (i > 0) {
+					buffer[count++] = ',';
+					buffer[count++] = ' ';
+				}
+				writeInt(lines[i]);
+			}
+			ensure(1);
+			buffer[count++] = ')';
+		}
+
+		ensure(1);
+		buffer[count++] = '\n';
+	}
+
+	/**
+	 * Write any buffered bytes to the underlying stream and flush it
+	 * @throws IOException if the underlying stream fails
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	/**
+	 * Write any buffered bytes and close the underlying stream
+	 * @throws IOException if the underlying stream fails
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Encode a word into the buffer
+	 * @param word the word to encode
+	 * @throws IOException if the underlying stream fails
+	 */
+	private void writeWord(String word) throws IOException {
+		int length = word.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = word.charAt(i);
+
+			//ASCII is the same single byte in every supported charset
+			if (c < 0x80) {
+				ensure(1);
+				buffer[count++] = (byte) c;
+			}
+
+			//Non-ASCII word in some other charset: let the charset encode the rest of the word
+			else if (!utf8) {
+				byte[] encoded = word.substring(i).getBytes(charset);
+				for (byte b : encoded) {
+					ensure(1);
+					buffer[count++] = b;
+				}
+				return;
+			}
+
+			//Hand-encoded UTF-8
+			else {
+				ensure(4);
+				if (c < 0x800) {
+					buffer[count++] = (byte) (0xC0 | (c >> 6));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(word.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, word.charAt(++i));
+					buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+				}
+				else if (Character.isSurrogate(c)) {
+					//An unpaired surrogate cannot be encoded
+					buffer[count++] = '?';
+				}
+				else {
+					buffer[count++] = (byte) (0xE0 | (c >> 12));
+					buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encode an int in decimal into the buffer. The caller must ensure there is room for MAX_INT_LENGTH bytes
+	 * @param value the int to encode
+	 */
+	private void writeInt(int value) {
+		//Work with a long so that Integer.MIN_VALUE can be negated
+		long remaining = value;
+		if (remaining < 0) {
+			buffer[count++] = '-';
+			remaining = -remaining;
+		}
+
+		//Find the number of digits, then fill them in from the right
+		int digits = 1;
+		for (long limit = 10; limit <= remaining; limit *= 10) digits++;
+
+		int position = count + digits;
+		count = position;
+		do {
+			buffer[--position] = (byte) ('0' + (remaining % 10));
+			remaining /= 10;
+		} while (remaining > 0);
+	}
+
+	/**
+	 * Make room in the buffer, writing it out if it cannot hold the given number of bytes
+	 * @param needed the number of bytes about to be added
+	 * @throws IOException if the underlying stream fails
+	 */
+	private void ensure(int needed) throws IOException {
+		if (count + needed > buffer.length) drain();
+	}
+
+	/**
+	 * Write the buffered bytes to the underlying stream
+	 * @throws IOException if the underlying stream fails
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+}
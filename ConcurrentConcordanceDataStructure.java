@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe concordance that several threads can add to at once.
+ *
+ * Terms are spread over a power-of-two number of stripes, each an ordinary ConcordanceDataStructure guarded by
+ * its own lock. A term always lands in the same stripe, chosen from the high bits of its hash, so writers only
+ * contend when they add terms from the same stripe at the same moment. Terms are normalized on the calling
+ * thread before any lock is taken. Lines may arrive out of order from different threads; each term's postings
+ * still end up sorted.
+ *
+ * For bulk ingestion each producer thread should tokenize its text with its own ConcordanceTokenizer created
+ * over this structure. add(String, int) does the same through a per-thread tokenizer.
+ *
+ * snapshot() takes every stripe lock at once and copies the stripes, so it sees a single consistent point in
+ * the stream of adds. showAll and writeAll work from a snapshot and can run while writers are still adding.
+ * Tokens are counted as in ConcordanceDataStructure: kept tokens by the stripes, and dropped tokens by
+ * contention-free counters, which a snapshot carries over so its stats report them.
+ */
+public class ConcurrentConcordanceDataStructure implements ConcordanceDataStructureInterface, ConcordanceTermSink {
+
+	//Stripes per available processor when the stripe count is not given
+	private static final int STRIPES_PER_PROCESSOR = 4;
+
+	//Hash function choosing a term's stripe, which takes a looked-up word's cached String hash
+	private static final TermHashFunction STRIPE_HASH = StandardTermHash.STRING;
+
+	private final ConcordanceDataStructure[] stripes;
+	private final ReentrantLock[] locks;
+	private final int stripeShift;
+
+	//Decides which terms are too short or too common to include
+	private volatile StopWordFilter filter = StopWordFilter.DEFAULT;
+
+	//Tokens dropped before reaching a stripe, counted from every adding thread
+	private final LongAdder tokensDroppedByCleanUp = new LongAdder();
+	private final LongAdder tokensDroppedByFilter = new LongAdder();
+
+	//Turns words into terms, for the text added and for lookups. Every stripe uses the same normalizer
+	private volatile TermNormalizer termNormalizer = TermNormalizer.DEFAULT;
+
+	//Normalizes terms passed to add(String, int), one tokenizer per calling thread
+	private volatile ThreadLocal<ConcordanceTokenizer> normalizers = newNormalizers();
+
+	/**
+	 * Create a ConcurrentConcordanceDataStructure with a stripe count based on the number of processors
+	 * @param num the estimated number of words to be input and hashed
+	 */
+	public ConcurrentConcordanceDataStructure(int num) {
+		this(num, Runtime.getRuntime().availableProcessors() * STRIPES_PER_PROCESSOR);
+	}
+
+	/**
+	 * Create a ConcurrentConcordanceDataStructure with a given number of stripes
+	 * @param num the estimated number of words to be input and hashed
+	 * @param stripeCount the number of independently locked stripes, rounded up to a power of two
+	 */
+	public ConcurrentConcordanceDataStructure(int num, int stripeCount) {
+		int bits = 0;
+		while ((1 << bits) < stripeCount && bits < 16) bits++;
+
+		stripes = new ConcordanceDataStructure[1 << bits];
+		locks = new ReentrantLock[1 << bits];
+		stripeShift = 32 - bits;
+
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ConcordanceDataStructure(Math.max(num / stripes.length, 1));
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Add a new item to the concordance. Safe to call from any number of threads
+	 * @param term the term to be added to the concordance
+	 * @param lineNum the line where the term occurs
+	 */
+	@Override
+	public void add(String term, int lineNum) {
+		normalizers.get().addTerm(term, lineNum);
+	}
+
+	/**
+	 * Add a term that has already been cleaned up, validated and lower-cased. Called by ConcordanceTokenizer.
+	 * Only the term's stripe is locked
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 */
+	@Override
+	public void addNormalized(char[] chars, int length, int lineNum) {
+		int stripe = stripeOf(STRIPE_HASH.hash(chars, 0, length));
+		locks[stripe].lock();
+		try {
+			stripes[stripe].addNormalized(chars, length, lineNum);
+		}
+		finally {
+			locks[stripe].unlock();
+		}
+	}
+
+	/**
+	 * Check if a normalized term is able to be included in the concordance, according to the stop word filter
+	 * @param chars a buffer holding the term, cleaned up and lower-cased
+	 * @param length the number of characters in the term
+	 * @return true if the term is INVALID, and should be excluded from the concordance
+	 */
+	@Override
+	public boolean isInvalid(char[] chars, int length) {
+		if (!filter.rejects(chars, length)) return false;
+
+		tokensDroppedByFilter.increment();
+		return true;
+	}
+
+	/**
+	 * Count a token that was dropped because nothing of it was left once punctuation was removed
+	 */
+	@Override
+	public void droppedByCleanUp() {
+		tokensDroppedByCleanUp.increment();
+	}
+
+	/**
+	 * Get the number of tokens added to the concordance, over every stripe
+	 * @return the number of tokens kept
+	 */
+	long getTokensAdded() {
+		long count = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				count += stripes[i].getTokensAdded();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of tokens dropped because nothing of them was left once punctuation was removed
+	 * @return the number of tokens
+	 */
+	long getTokensDroppedByCleanUp() {
+		return tokensDroppedByCleanUp.sum();
+	}
+
+	/**
+	 * Get the number of tokens dropped by the stop word filter
+	 * @return the number of tokens
+	 */
+	long getTokensDroppedByFilter() {
+		return tokensDroppedByFilter.sum();
+	}
+
+	/**
+	 * Set the filter deciding which terms are left out of the concordance. Terms already added are not affected
+	 * @param filter the filter to apply to new terms
+	 */
+	public void setStopWordFilter(StopWordFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Set the normalizer that turns words into terms, both for the text added to the structure and for the words
+	 * it is asked to look up. Tokenizers created for the structure from then on use it
+	 * @param termNormalizer the normalizer, for example TermNormalizer.NFC
+	 * @throws IllegalStateException if terms have already been added
+	 */
+	public void setTermNormalizer(TermNormalizer termNormalizer) {
+		for (ReentrantLock lock : locks) {
+			lock.lock();
+		}
+		try {
+			for (ConcordanceDataStructure stripe : stripes) {
+				if (stripe.getTermCount() > 0) {
+					throw new IllegalStateException("The normalizer must be set before terms are added");
+				}
+			}
+			for (ConcordanceDataStructure stripe : stripes) {
+				stripe.setTermNormalizer(termNormalizer);
+			}
+			this.termNormalizer = termNormalizer;
+			this.normalizers = newNormalizers();
+		}
+		finally {
+			for (ReentrantLock lock : locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Get the normalizer that turns words into terms for this structure
+	 * @return the normalizer, TermNormalizer.DEFAULT unless another has been set
+	 */
+	@Override
+	public TermNormalizer getTermNormalizer() {
+		return termNormalizer;
+	}
+
+	/**
+	 * Create the per-thread tokenizers for add(String, int), which pick up the current normalizer
+	 * @return a ThreadLocal creating a tokenizer over this structure for each thread
+	 */
+	private ThreadLocal<ConcordanceTokenizer> newNormalizers() {
+		return ThreadLocal.withInitial(() -> new ConcordanceTokenizer(this));
+	}
+
+	/**
+	 * Copy the whole concordance as it stands at one moment. Every stripe is locked while it is copied, so the
+	 * copy reflects each add that finished before the snapshot and none that started after it. The copy's stats
+	 * also count the tokens dropped so far
+	 * @return an independent ConcordanceDataStructure holding every term added so far
+	 */
+	public ConcordanceDataStructure snapshot() {
+		ConcordanceDataStructure snapshot = new ConcordanceDataStructure(1);
+		snapshot.setTermNormalizer(termNormalizer);
+
+		for (ReentrantLock lock : locks) {
+			lock.lock();
+		}
+		try {
+			for (ConcordanceDataStructure stripe : stripes) {
+				snapshot.merge(stripe, 0);
+			}
+			snapshot.addDroppedTokens(tokensDroppedByCleanUp.sum(), tokensDroppedByFilter.sum());
+		}
+		finally {
+			for (ReentrantLock lock : locks) {
+				lock.unlock();
+			}
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * Display all words in the concordance, as of a consistent snapshot
+	 * @return an ArrayList containing all words and their page occurrences
+	 */
+	@Override
+	public ArrayList<String> showAll() {
+		return snapshot().showAll();
+	}
+
+	/**
+	 * Write every word in the concordance, as of a consistent snapshot, in the same order and format as showAll
+	 * @param writer the writer receiving the lines
+	 * @throws IOException if the writer fails
+	 */
+	public void writeAll(ConcordanceWriter writer) throws IOException {
+		snapshot().writeAll(writer);
+	}
+
+	/**
+	 * Get the lines on which a word occurs. Only the word's stripe is locked
+	 * @param word the word to look up, normalized the way add normalizes it
+	 * @return the lines in ascending order, or an empty array if the word is not in the concordance
+	 */
+	@Override
+	public int[] lookup(String word) {
+		int stripe = stripeOf(STRIPE_HASH.hash(termNormalizer.normalize(word)));
+		locks[stripe].lock();
+		try {
+			return stripes[stripe].lookup(word);
+		}
+		finally {
+			locks[stripe].unlock();
+		}
+	}
+
+	/**
+	 * Get every word that starts with a prefix, in String order. Each stripe is searched under its own lock
+	 * @param prefix the prefix to search for, normalized the way add normalizes words
+	 * @return an ArrayList of the matching words
+	 */
+	@Override
+	public ArrayList<String> prefix(String prefix) {
+		ArrayList<String> words = new ArrayList<>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				words.addAll(stripes[i].prefix(prefix));
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+
+		//Each stripe's words are sorted, but the stripes interleave
+		words.sort(null);
+		return words;
+	}
+
+	/**
+	 * Get every word from one word up to, but not including, another, in String order. Each stripe is
+	 * searched under its own lock
+	 * @param from the lowest word to include, or null to start from the first word
+	 * @param to the word at which to stop, or null to continue to the last word
+	 * @return an ArrayList of the words in the range
+	 */
+	@Override
+	public ArrayList<String> range(String from, String to) {
+		ArrayList<String> words = new ArrayList<>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				words.addAll(stripes[i].range(from, to));
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+
+		//Each stripe's words are sorted, but the stripes interleave
+		words.sort(null);
+		return words;
+	}
+
+	/**
+	 * Get the k terms that occur most often, most frequent first and alphabetically among equal counts. Every
+	 * term lives in exactly one stripe, so the overall top k are among the top k of each stripe, which are
+	 * found under each stripe's lock in turn
+	 * @param k the number of terms wanted
+	 * @return an ArrayList of at most k terms and their exact occurrence counts
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	@Override
+	public ArrayList<TermCount> topTerms(int k) {
+		ArrayList<TermCount> top = new ArrayList<>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				top.addAll(stripes[i].topTerms(k));
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+
+		top.sort(null);
+		return top.size() > k ? new ArrayList<>(top.subList(0, k)) : top;
+	}
+
+	/**
+	 * Get the combined size of every stripe's hash table. Indexes for getWords and getPageNumbers run through the
+	 * stripes in order. A stripe may grow between calls, which shifts the indexes of later stripes
+	 */
+	@Override
+	public int getTableSize() {
+		int size = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				size += stripes[i].getTableSize();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get a list of the words entered at the given index of the combined hash table
+	 * @param index the index of the combined hash table
+	 * @return an ArrayList holding the word in the given slot, or an empty ArrayList if the slot is unused
+	 */
+	@Override
+	public ArrayList<String> getWords(int index) {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				if (index < stripes[i].getTableSize()) return stripes[i].getWords(index);
+				index -= stripes[i].getTableSize();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		throw new IndexOutOfBoundsException("Index past the end of the table");
+	}
+
+	/**
+	 * Get a list of the page numbers for the term at a given index in the combined hash table
+	 * @param index the index of the combined hash table
+	 * @return an ArrayList containing the page numbers of the term at the given index, or an empty
+	 * ArrayList if the slot is unused
+	 */
+	@Override
+	public ArrayList<LinkedList<Integer>> getPageNumbers(int index) {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				if (index < stripes[i].getTableSize()) return stripes[i].getPageNumbers(index);
+				index -= stripes[i].getTableSize();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		throw new IndexOutOfBoundsException("Index past the end of the table");
+	}
+
+	/**
+	 * Get the number of lines of the term at a given index of the combined hash table
+	 * @param index the index of the combined hash table
+	 * @return the number of lines, or 0 if the slot is unused
+	 */
+	@Override
+	public int getLineCount(int index) {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				if (index < stripes[i].getTableSize()) return stripes[i].getLineCount(index);
+				index -= stripes[i].getTableSize();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		throw new IndexOutOfBoundsException("Index past the end of the table");
+	}
+
+	/**
+	 * Copy the lines of the term at a given index of the combined hash table into an existing array. The lines
+	 * are copied under the stripe's lock
+	 * @param index the index of the combined hash table
+	 * @param dest the array to fill, which must have room for getLineCount(index) lines from offset
+	 * @param offset the index of dest at which to start
+	 * @return the number of lines copied, or 0 if the slot is unused
+	 */
+	@Override
+	public int getLines(int index, int[] dest, int offset) {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				if (index < stripes[i].getTableSize()) return stripes[i].getLines(index, dest, offset);
+				index -= stripes[i].getTableSize();
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+		throw new IndexOutOfBoundsException("Index past the end of the table");
+	}
+
+	/**
+	 * Pass every term and its lines to a visitor, one stripe at a time. Each stripe is locked while its terms
+	 * are visited, so the visitor sees a consistent view of each stripe but not of the whole concordance, and
+	 * terms do not arrive in any particular order
+	 * @param visitor the visitor receiving each term
+	 */
+	@Override
+	public void forEach(ConcordanceVisitor visitor) {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].lock();
+			try {
+				stripes[i].forEach(visitor);
+			}
+			finally {
+				locks[i].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Choose the stripe for a term from the high bits of its scrambled hash, which are independent of the low
+	 * bits each stripe uses to place the term
+	 * @param hash the term's hash from STRIPE_HASH
+	 * @return the index of the stripe
+	 */
+	private int stripeOf(int hash) {
+		return stripeShift == 32 ? 0 : (hash * 0x9E3779B9) >>> stripeShift;
+	}
+
+}
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+/**
+ * The (document, line) pairs where one term of a multi-document concordance occurs, together with the number
+ * of times the term occurred.
+ *
+ * Pairs are grouped by document: each document holding the term has one block, and the blocks are kept in
+ * ascending order of document id, each holding its lines in ascending order. A document id is stored once per
+ * block rather than once per line, and the lines of every block share a single int array, so a term costs a
+ * few arrays no matter how many documents it occurs in.
+ *
+ * Documents normally arrive in ascending order, so adding one is an append. A document that arrives out of
+ * order, because it was read on another thread, is inserted in sorted position by a binary search.
+ */
+public class DocumentPostingsList {
+
+	//Capacity of the arrays allocated for the first block
+	private static final int INITIAL_BLOCK_CAPACITY = 2;
+	private static final int INITIAL_LINE_CAPACITY = 4;
+
+	//The document of each block, in ascending order
+	private int[] documents;
+
+	//Where each block's lines end in lines, so block i holds lines[blockEnds[i - 1]] to lines[blockEnds[i] - 1]
+	private int[] blockEnds;
+	private int blockCount;
+
+	//The lines of every block, one block after another
+	private int[] lines;
+
+	//Number of times the term occurred in every document, counting repeats on the same line
+	private long occurrences;
+
+	/**
+	 * Create an empty DocumentPostingsList
+	 */
+	public DocumentPostingsList() {
+		documents = new int[INITIAL_BLOCK_CAPACITY];
+		blockEnds = new int[INITIAL_BLOCK_CAPACITY];
+		lines = new int[INITIAL_LINE_CAPACITY];
+	}
+
+	/**
+	 * Add the lines of one document to the list
+	 * @param document the id of the document
+	 * @param documentLines the lines of the term within the document, along with its occurrences
+	 * @throws IllegalArgumentException if the document has already been added
+	 */
+	public void addDocument(int document, PostingsView documentLines) {
+		int count = documentLines.size();
+		if (count == 0) return;
+
+		//Common case: documents arrive in ascending order, so the block goes at the end
+		int block = blockCount;
+		if (blockCount > 0 && document <= documents[blockCount - 1]) {
+			block = Arrays.binarySearch(documents, 0, blockCount, document);
+			if (block >= 0) throw new IllegalArgumentException("Document " + document + " has already been added");
+			block = -block - 1;
+		}
+
+		int size = size();
+		int start = block == 0 ? 0 : blockEnds[block - 1];
+		growBlocks(blockCount + 1);
+		growLines(size + count);
+
+		//Open a gap for the block and its lines, and move the ends of the later blocks past the new lines
+		System.arraycopy(documents, block, documents, block + 1, blockCount - block);
+		System.arraycopy(blockEnds, block, blockEnds, block + 1, blockCount - block);
+		System.arraycopy(lines, start, lines, start + count, size - start);
+		for (int i = block + 1; i <= blockCount; i++) {
+			blockEnds[i] += count;
+		}
+
+		documents[block] = document;
+		blockEnds[block] = start + count;
+		documentLines.copyTo(lines, start);
+		blockCount++;
+		occurrences += documentLines.getOccurrenceCount();
+	}
+
+	/**
+	 * Add every block of another list to this one, along with its occurrences. The two lists must not share
+	 * a document. Runs in time linear in the size of both lists
+	 * @param other the list whose blocks are added. It is not modified
+	 * @throws IllegalArgumentException if a document is in both lists
+	 */
+	public void addAll(DocumentPostingsList other) {
+		if (other.blockCount == 0) return;
+
+		//When every incoming document follows the documents already held, append the blocks in one pass
+		int size = size();
+		if (blockCount == 0 || other.documents[0] > documents[blockCount - 1]) {
+			growBlocks(blockCount + other.blockCount);
+			growLines(size + other.size());
+			System.arraycopy(other.documents, 0, documents, blockCount, other.blockCount);
+			for (int i = 0; i < other.blockCount; i++) {
+				blockEnds[blockCount + i] = other.blockEnds[i] + size;
+			}
+			System.arraycopy(other.lines, 0, lines, size, other.size());
+			blockCount += other.blockCount;
+			occurrences += other.occurrences;
+			return;
+		}
+
+		//Otherwise merge the blocks of both lists by document into new arrays
+		int[] mergedDocuments = new int[blockCount + other.blockCount];
+		int[] mergedEnds = new int[mergedDocuments.length];
+		int[] mergedLines = new int[size + other.size()];
+		int i = 0, j = 0, block = 0, position = 0;
+		while (i < blockCount || j < other.blockCount) {
+			boolean fromThis = j == other.blockCount || (i < blockCount && documents[i] < other.documents[j]);
+			if (!fromThis && i < blockCount && documents[i] == other.documents[j]) {
+				throw new IllegalArgumentException("Document " + documents[i] + " is in both lists");
+			}
+
+			DocumentPostingsList source = fromThis ? this : other;
+			int sourceBlock = fromThis ? i++ : j++;
+			int start = sourceBlock == 0 ? 0 : source.blockEnds[sourceBlock - 1];
+			int count = source.blockEnds[sourceBlock] - start;
+
+			System.arraycopy(source.lines, start, mergedLines, position, count);
+			position += count;
+			mergedDocuments[block] = source.documents[sourceBlock];
+			mergedEnds[block++] = position;
+		}
+
+		documents = mergedDocuments;
+		blockEnds = mergedEnds;
+		lines = mergedLines;
+		blockCount = block;
+		occurrences += other.occurrences;
+	}
+
+	/**
+	 * Get the number of (document, line) pairs in the list
+	 * @return the number of lines over every document
+	 */
+	public int size() {
+		return blockCount == 0 ? 0 : blockEnds[blockCount - 1];
+	}
+
+	/**
+	 * Get the number of documents the term occurs in
+	 * @return the number of blocks
+	 */
+	public int getDocumentCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Get the document of a block
+	 * @param block the index of the block, from 0 to getDocumentCount() - 1
+	 * @return the id of the document
+	 */
+	public int getDocument(int block) {
+		return documents[block];
+	}
+
+	/**
+	 * Get the number of lines of a block
+	 * @param block the index of the block
+	 * @return the number of lines of the term within the block's document
+	 */
+	public int getLineCount(int block) {
+		return blockEnds[block] - (block == 0 ? 0 : blockEnds[block - 1]);
+	}
+
+	/**
+	 * Copy the lines of a block into an existing array
+	 * @param block the index of the block
+	 * @param dest the array to fill
+	 * @param offset the index of dest at which to start
+	 * @return the number of lines copied
+	 */
+	public int copyLines(int block, int[] dest, int offset) {
+		int start = block == 0 ? 0 : blockEnds[block - 1];
+		int count = blockEnds[block] - start;
+		System.arraycopy(lines, start, dest, offset, count);
+		return count;
+	}
+
+	/**
+	 * Find the block of a document
+	 * @param document the id of the document
+	 * @return the index of the document's block, or -1 if the term does not occur in the document
+	 */
+	public int findDocument(int document) {
+		int block = Arrays.binarySearch(documents, 0, blockCount, document);
+		return block < 0 ? -1 : block;
+	}
+
+	/**
+	 * Get the number of times the term occurred, counting each repeat on the same line
+	 * @return the number of occurrences over every document
+	 */
+	public long getOccurrenceCount() {
+		return occurrences;
+	}
+
+	/**
+	 * Append the blocks of the list to a StringBuilder, each as the name of its document followed by its lines
+	 * in parentheses, separated by a comma and a space
+	 * @param builder the StringBuilder to append to
+	 * @param documentTable the table naming the documents
+	 */
+	public void appendTo(StringBuilder builder, DocumentTable documentTable) {
+		for (int block = 0, position = 0; block < blockCount; block++) {
+			if (block > 0) builder.append(", ");
+			builder.append(documentTable.getName(documents[block])).append(" (");
+			for (int first = position; position < blockEnds[block]; position++) {
+				if (position > first) builder.append(", ");
+				builder.append(lines[position]);
+			}
+			builder.append(')');
+		}
+	}
+
+	/**
+	 * Get the number of bytes the list's arrays take, counting their full capacity
+	 * @return the size of the arrays in bytes
+	 */
+	public int getByteSize() {
+		return (documents.length + blockEnds.length + lines.length) * Integer.BYTES;
+	}
+
+	/**
+	 * Grow the per-block arrays, at least doubling their capacity
+	 * @param capacity the smallest number of blocks needed
+	 */
+	private void growBlocks(int capacity) {
+		if (capacity <= documents.length) return;
+		int grown = Math.max(capacity, documents.length * 2);
+		documents = Arrays.copyOf(documents, grown);
+		blockEnds = Arrays.copyOf(blockEnds, grown);
+	}
+
+	/**
+	 * Grow the array of lines, at least doubling its capacity
+	 * @param capacity the smallest number of lines needed
+	 */
+	private void growLines(int capacity) {
+		if (capacity > lines.length) lines = Arrays.copyOf(lines, Math.max(capacity, lines.length * 2));
+	}
+
+}
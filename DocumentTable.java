@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+/**
+ * The documents of a multi-document concordance, numbered by dense int ids from 0 in the order they are added.
+ *
+ * The names of every document are stored one after another in a single shared char arena with an int start
+ * offset per document, as TermDictionary stores terms, so a job over thousands of files keeps one array of
+ * names rather than a String per file. Each document's number of lines is recorded once it has been read.
+ *
+ * Documents are added by a single thread before reading starts. Line counts may then be set from the threads
+ * reading each document, as long as they are only read once every document has finished.
+ */
+public class DocumentTable {
+
+	//Capacity of the arena and the per-document arrays when a table is created
+	private static final int INITIAL_ARENA_CAPACITY = 1 << 10;
+	private static final int INITIAL_DOCUMENT_CAPACITY = 1 << 6;
+
+	//Every document's name, one after another
+	private char[] arena;
+	private int arenaLength;
+
+	//Where each name starts in the arena, with one more entry marking where the next name will start
+	private int[] starts;
+
+	//The number of lines of each document, 0 until it is set
+	private int[] lineCounts;
+
+	private int size;
+
+	/**
+	 * Create an empty DocumentTable
+	 */
+	public DocumentTable() {
+		arena = new char[INITIAL_ARENA_CAPACITY];
+		starts = new int[INITIAL_DOCUMENT_CAPACITY + 1];
+		lineCounts = new int[INITIAL_DOCUMENT_CAPACITY];
+	}
+
+	/**
+	 * Add a document to the table
+	 * @param name the name of the document, such as its path relative to the directory being indexed
+	 * @return the id of the new document
+	 */
+	public int add(String name) {
+		if (size == lineCounts.length) {
+			starts = Arrays.copyOf(starts, lineCounts.length * 2 + 1);
+			lineCounts = Arrays.copyOf(lineCounts, lineCounts.length * 2);
+		}
+		if (arenaLength + name.length() > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arenaLength + name.length(), arena.length * 2));
+		}
+
+		name.getChars(0, name.length(), arena, arenaLength);
+		arenaLength += name.length();
+		starts[size + 1] = arenaLength;
+		return size++;
+	}
+
+	/**
+	 * Get the number of documents in the table
+	 * @return the number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the name of a document
+	 * @param id the id of the document
+	 * @return the name as a new String
+	 */
+	public String getName(int id) {
+		return new String(arena, starts[id], starts[id + 1] - starts[id]);
+	}
+
+	/**
+	 * Find a document by name
+	 * @param name the name of the document
+	 * @return the id of the document, or -1 if no document has the name
+	 */
+	public int find(String name) {
+		for (int id = 0; id < size; id++) {
+			if (matches(id, name)) return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether a document has a name
+	 * @param id the id of the document
+	 * @param name the name to compare with
+	 * @return true if the document's name is equal to name
+	 */
+	private boolean matches(int id, String name) {
+		int start = starts[id];
+		if (starts[id + 1] - start != name.length()) return false;
+
+		for (int i = 0; i < name.length(); i++) {
+			if (arena[start + i] != name.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Record the number of lines of a document once it has been read
+	 * @param id the id of the document
+	 * @param lineCount the number of lines
+	 */
+	public void setLineCount(int id, int lineCount) {
+		lineCounts[id] = lineCount;
+	}
+
+	/**
+	 * Get the number of lines of a document
+	 * @param id the id of the document
+	 * @return the number of lines, or 0 if the document has not been read
+	 */
+	public int getLineCount(int id) {
+		return lineCounts[id];
+	}
+
+	/**
+	 * Get the number of bytes taken by the table's arrays, counting their full capacity
+	 * @return the size of the arena and the per-document arrays in bytes
+	 */
+	public long getByteSize() {
+		return arena.length * (long) Character.BYTES + (starts.length + lineCounts.length) * (long) Integer.BYTES;
+	}
+
+}
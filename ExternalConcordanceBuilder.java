@@ -0,0 +1,428 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a concordance whose terms need not all fit in the heap at once, by spilling them to sorted run files.
+ *
+ * The builder is a ConcordanceTermSink placed in front of a ConcordanceDataStructure. Terms pass straight
+ * through to the structure, and every few thousand terms the builder estimates the heap its terms take.
+ * Once the estimate passes the budget, every term of the structure is written to a new run file in concordance
+ * order and the structure is cleared. writeAll then merges the runs, together with the terms still held, into
+ * the final concordance. Memory during the merge is one term per run plus the terms that share a sort key.
+ *
+ * A run file holds its terms in the order showAll lists them. For each term it stores the term's length in
+ * UTF-8 bytes as a variable-length int, the bytes, the number of lines as a variable-length int, the number of
+ * occurrences as a variable-length long, and the gap-encoded lines as written by PostingsList.writeEncoded.
+ * A length of 0 ends the run. Runs cover ascending
+ * ranges of lines, so a term's lines are joined by appending them run by run. Only a line that was being read
+ * when a run was spilled can appear in two runs, and it is recorded once.
+ *
+ * Terms that differ only by apostrophes share a sort key, and their order depends on their complete line
+ * lists. The merge therefore takes every term with the lowest sort key from every run at once, joins the lines
+ * of each word, and sorts that small group before writing it. The output is identical to writing the whole
+ * concordance from memory.
+ *
+ * When more than MAX_RUNS runs have been spilled, the oldest runs are merged into one, so the number of open
+ * files stays bounded. Run files are deleted by writeAll and close.
+ */
+public class ExternalConcordanceBuilder implements ConcordanceTermSink, Closeable {
+
+	//Number of runs merged at once, and the most run files kept before the oldest are merged
+	static final int MAX_RUNS = 64;
+
+	//Number of terms added between estimates of the heap taken
+	static final int CHECK_INTERVAL = 1 << 12;
+
+	//Estimated heap taken by each line added, allowing for line arrays that grow by doubling
+	private static final int BYTES_PER_LINE = 2 * Integer.BYTES;
+
+	//Size of the buffers of run files
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ConcordanceDataStructure cds;
+	private final long heapBudget;
+	private final File spillDirectory;
+
+	//Run files in the order they were spilled, which is ascending order of their lines
+	private final ArrayList<File> runs = new ArrayList<>();
+
+	//Bytes the structure takes while empty, such as a hash table it keeps the size of through a clear
+	private long emptyBytes;
+
+	//Terms added since the last spill, and until the next estimate
+	private long termsSinceSpill;
+	private int untilCheck = CHECK_INTERVAL;
+
+	/**
+	 * Create an ExternalConcordanceBuilder
+	 * @param cds the structure terms are added to between spills. It should be empty, and it is cleared at
+	 * every spill
+	 * @param heapBudget the number of bytes the structure's terms may take before it is spilled
+	 * @param spillDirectory the directory for run files, or null for the default temporary directory
+	 * @throws IllegalArgumentException if heapBudget is not positive
+	 */
+	public ExternalConcordanceBuilder(ConcordanceDataStructure cds, long heapBudget, File spillDirectory) {
+		if (heapBudget <= 0) throw new IllegalArgumentException("Heap budget must be positive");
+		this.cds = cds;
+		this.heapBudget = heapBudget;
+		this.spillDirectory = spillDirectory;
+		this.emptyBytes = cds.getStructureBytes();
+	}
+
+	/**
+	 * Check if a normalized term is able to be included in the concordance, according to the structure's filter
+	 * @param chars a buffer holding the term, cleaned up and lower-cased
+	 * @param length the number of characters in the term
+	 * @return true if the term is INVALID, and should be excluded from the concordance
+	 */
+	@Override
+	public boolean isInvalid(char[] chars, int length) {
+		return cds.isInvalid(chars, length);
+	}
+
+	/**
+	 * Add a term to the structure, spilling the structure first if it has outgrown the heap budget
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs
+	 * @throws UncheckedIOException if a run file cannot be written
+	 */
+	@Override
+	public void addNormalized(char[] chars, int length, int lineNum) {
+		if (--untilCheck == 0) {
+			untilCheck = CHECK_INTERVAL;
+			if (getEstimatedBytes() > heapBudget) {
+				try {
+					spill();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		cds.addNormalized(chars, length, lineNum);
+		termsSinceSpill++;
+	}
+
+	/**
+	 * Count a token that was dropped because nothing of it was left once punctuation was removed
+	 */
+	@Override
+	public void droppedByCleanUp() {
+		cds.droppedByCleanUp();
+	}
+
+	/**
+	 * Estimate the heap taken by the terms added to the structure since the last spill. The storage the structure
+	 * keeps while empty is left out, since spilling cannot free it: a hash table grown for a large vocabulary
+	 * would otherwise keep the estimate over a small budget and spill a tiny run at every check. Every term added
+	 * since the last spill is counted as a new line, so the estimate errs high for terms repeated on a line
+	 * @return the estimated number of bytes
+	 */
+	public long getEstimatedBytes() {
+		return cds.getStructureBytes() - emptyBytes + termsSinceSpill * BYTES_PER_LINE;
+	}
+
+	/**
+	 * Get the number of run files on disk
+	 * @return the number of runs
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Write every term of the structure to a new run file and clear the structure. Does nothing if the
+	 * structure is empty
+	 * @throws IOException if the run file cannot be written
+	 */
+	public void spill() throws IOException {
+		if (cds.getTermCount() == 0) return;
+
+		File run = File.createTempFile("concordance-run", ".tmp", spillDirectory);
+		runs.add(run);
+		try (DataOutputStream out = createRun(run)) {
+			for (ConcordanceOrder.Entry entry : cds.sortedEntries()) {
+				writeEntry(out, entry.getWord(), entry.getPostings());
+			}
+			out.write(0);
+		}
+
+		cds.clear();
+		emptyBytes = cds.getStructureBytes();
+		termsSinceSpill = 0;
+
+		//Keep the number of run files bounded by merging the oldest, which stay first in line order
+		if (runs.size() > MAX_RUNS) {
+			File merged = File.createTempFile("concordance-run", ".tmp", spillDirectory);
+			ArrayList<File> oldest = new ArrayList<>(runs.subList(0, MAX_RUNS));
+			try (DataOutputStream out = createRun(merged)) {
+				merge(oldest, null, out);
+				out.write(0);
+			}
+			catch (IOException | RuntimeException e) {
+				merged.delete();
+				throw e;
+			}
+
+			runs.subList(0, MAX_RUNS).clear();
+			runs.add(0, merged);
+			for (File file : oldest) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Write every word of the concordance, in the same order and format as ConcordanceDataStructure.showAll,
+	 * merging the run files with the terms still held, and then delete the run files
+	 * @param writer the writer receiving the lines
+	 * @throws IOException if a run file cannot be read or the writer fails
+	 */
+	public void writeAll(ConcordanceWriter writer) throws IOException {
+
+		//Nothing was spilled: the structure holds the whole concordance
+		if (runs.isEmpty()) {
+			cds.writeAll(writer);
+			return;
+		}
+
+		spill();
+		long start = System.nanoTime();
+		try {
+			merge(runs, writer, null);
+		}
+		finally {
+			close();
+		}
+		cds.getStats().recordPhase(ConcordanceStats.Phase.WRITE, start);
+	}
+
+	/**
+	 * Delete every run file
+	 */
+	@Override
+	public void close() {
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+	}
+
+	/**
+	 * K-way merge run files, joining the lines of matching terms, into either a concordance or another run
+	 * @param files the run files, in ascending order of their lines
+	 * @param writer the writer receiving the concordance, or null to write a run instead
+	 * @param out the output receiving the run, without its end marker, if writer is null
+	 * @throws IOException if a run cannot be read or the output fails
+	 */
+	private static void merge(ArrayList<File> files, ConcordanceWriter writer, DataOutputStream out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(files.size(),
+				(r1, r2) -> ConcordanceOrder.compareKeys(r1.key, r2.key));
+		ArrayList<RunReader> readers = new ArrayList<>(files.size());
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				RunReader reader = new RunReader(files.get(i), i);
+				readers.add(reader);
+				if (reader.next()) queue.add(reader);
+			}
+
+			ArrayList<RunReader.Piece> pieces = new ArrayList<>();
+			ArrayList<ConcordanceOrder.Entry> group = new ArrayList<>();
+			while (!queue.isEmpty()) {
+
+				//Take every term with the lowest sort key from every run. A run may hold several such words
+				String key = queue.peek().key;
+				pieces.clear();
+				while (!queue.isEmpty() && ConcordanceOrder.compareKeys(queue.peek().key, key) == 0) {
+					RunReader reader = queue.poll();
+					boolean more;
+					do {
+						pieces.add(reader.piece());
+					} while ((more = reader.next()) && ConcordanceOrder.compareKeys(reader.key, key) == 0);
+					if (more) queue.add(reader);
+				}
+
+				//Join the lines of each word, run by run so that each run's lines are appended in order
+				pieces.sort(null);
+				group.clear();
+				for (int i = 0; i < pieces.size(); ) {
+					RunReader.Piece first = pieces.get(i++);
+					while (i < pieces.size() && pieces.get(i).word.equals(first.word)) {
+						first.postings.addAll(pieces.get(i++).postings, 0);
+					}
+					group.add(new ConcordanceOrder.Entry(first.word, first.postings));
+				}
+				if (group.size() > 1) group.sort(ConcordanceOrder.ENTRY_ORDER);
+
+				for (ConcordanceOrder.Entry entry : group) {
+					if (writer != null) writer.write(entry.getWord(), entry.getPostings());
+					else writeEntry(out, entry.getWord(), entry.getPostings());
+				}
+			}
+		}
+		finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Open a run file for writing
+	 * @param file the run file
+	 * @return a buffered output to the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static DataOutputStream createRun(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	}
+
+	/**
+	 * Write one term of a run
+	 * @param out the output
+	 * @param word the term
+	 * @param postings the term's lines
+	 * @throws IOException if the output fails
+	 */
+	private static void writeEntry(DataOutputStream out, String word, PostingsList postings) throws IOException {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		PostingsList.writeVarInt(out, bytes.length);
+		out.write(bytes);
+		PostingsList.writeVarInt(out, postings.size());
+		PostingsList.writeVarLong(out, postings.getOccurrenceCount());
+		postings.writeEncoded(out);
+	}
+
+	/**
+	 * Reads the terms of a run file one at a time
+	 */
+	private static class RunReader implements Closeable {
+		private final DataInputStream in;
+		private final File file;
+		private final int run;
+		private byte[] bytes = new byte[64];
+		private final ByteBuffer varInt = ByteBuffer.allocate(PostingsList.MAX_VAR_LONG_SIZE);
+
+		//The current term, its sort key and its lines
+		private String word, key;
+		private PostingsList postings;
+
+		/**
+		 * Open a run file
+		 * @param file the run file
+		 * @param run the position of the run in line order
+		 * @throws IOException if the file cannot be opened
+		 */
+		private RunReader(File file, int run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			this.file = file;
+			this.run = run;
+		}
+
+		/**
+		 * Move to the next term of the run
+		 * @return true if there was another term, false at the end of the run
+		 * @throws IOException if the file cannot be read or is cut short
+		 */
+		private boolean next() throws IOException {
+			int length = readVarInt();
+			if (length == 0) return false;
+
+			if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+			in.readFully(bytes, 0, length);
+			word = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			key = ConcordanceOrder.sortKey(word);
+
+			//Decode the gaps back into lines, which arrive in order and so are appended
+			postings = new PostingsList();
+			int count = readVarInt(), line = 0;
+			long occurrences = readVarLong();
+			for (int i = 0; i < count; i++) {
+				line += readVarInt();
+				postings.add(line);
+			}
+
+			//Each add counted one occurrence
+			postings.addOccurrences(occurrences - count);
+			return true;
+		}
+
+		/**
+		 * Take the current term, to be joined with the same term from other runs
+		 * @return the current term, its lines and its run
+		 */
+		private Piece piece() {
+			return new Piece(word, postings, run);
+		}
+
+		/**
+		 * Read an unsigned variable-length int
+		 * @return the value
+		 * @throws IOException if the file cannot be read or ends part way through the value
+		 */
+		private int readVarInt() throws IOException {
+			try {
+				return PostingsList.readVarInt(in, varInt);
+			}
+			catch (EOFException e) {
+				throw new EOFException("Run file " + file + " is truncated");
+			}
+		}
+
+		/**
+		 * Read an unsigned variable-length long
+		 * @return the value
+		 * @throws IOException if the file cannot be read or ends part way through the value
+		 */
+		private long readVarLong() throws IOException {
+			try {
+				return PostingsList.readVarLong(in, varInt);
+			}
+			catch (EOFException e) {
+				throw new EOFException("Run file " + file + " is truncated");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		/**
+		 * A term read from a run, ordered by word and then by run so that lines are joined in ascending order
+		 */
+		private static class Piece implements Comparable<Piece> {
+			private final String word;
+			private final PostingsList postings;
+			private final int run;
+
+			private Piece(String word, PostingsList postings, int run) {
+				this.word = word;
+				this.postings = postings;
+				this.run = run;
+			}
+
+			@Override
+			public int compareTo(Piece other) {
+				int result = word.compareTo(other.word);
+				return result != 0 ? result : Integer.compare(run, other.run);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,262 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Measures how evenly a TermHashFunction spreads the terms of a corpus over a power of two hash table, as used by
+ * TermDictionary.
+ *
+ * The table is sized as a TermDictionary holding the terms would be, the smallest power of two that keeps them
+ * under the maximum load factor. Each term's home bucket is counted, and the counts are compared with what a
+ * uniformly random hash would give: the number of terms that share a home bucket against the number expected,
+ * the longest bucket, and the chi-squared statistic of the bucket counts divided by its expected value, which is
+ * close to 1 for a good hash and grows as terms clump together. The terms are then placed by linear probing to
+ * give the mean number of slots a lookup examines and the longest run of used slots. Hashing speed is the best
+ * of several passes over every term.
+ *
+ * Identifier-heavy text such as log files holds many terms that differ only in their last few characters. A
+ * weak hash gives those terms neighbouring hash values, and a table that takes slots from the low bits turns
+ * them into long runs of occupied slots. The report shows this directly as a high chi-squared ratio and long
+ * runs of used slots. Run it from the repository root with:
+ * <pre>
+ * javac -encoding windows-1252 -d out *.java
+ * java -cp out HashQualityReport corpus.txt
+ * </pre>
+ * The corpus is read as UTF-8 and tokenized as a concordance would tokenize it, and a report is printed for each
+ * StandardTermHash.
+ */
+public class HashQualityReport {
+
+	//Load factor the table is sized for, matching TermDictionary
+	private static final double MAX_LOAD_FACTOR = 0.75;
+
+	//Number of timed passes over the terms, of which the fastest is reported
+	private static final int TIMING_PASSES = 5;
+
+	private final String hashName;
+	private final int termCount, tableSize, occupiedBuckets, longestBucket, longestRun;
+	private final double expectedCollisions, chiSquaredRatio, meanProbes, nanosPerHash;
+
+	/**
+	 * Create a HashQualityReport from measurements already taken
+	 */
+	private HashQualityReport(String hashName, int termCount, int tableSize, int occupiedBuckets, int longestBucket,
+			int longestRun, double expectedCollisions, double chiSquaredRatio, double meanProbes, double nanosPerHash) {
+		this.hashName = hashName;
+		this.termCount = termCount;
+		this.tableSize = tableSize;
+		this.occupiedBuckets = occupiedBuckets;
+		this.longestBucket = longestBucket;
+		this.longestRun = longestRun;
+		this.expectedCollisions = expectedCollisions;
+		this.chiSquaredRatio = chiSquaredRatio;
+		this.meanProbes = meanProbes;
+		this.nanosPerHash = nanosPerHash;
+	}
+
+	/**
+	 * Measure how a hash function spreads the terms of a concordance
+	 * @param cds the concordance whose terms are hashed
+	 * @param function the hash function to measure
+	 * @return the report
+	 */
+	public static HashQualityReport analyze(ConcordanceDataStructure cds, TermHashFunction function) {
+		TermDictionary dictionary = cds.getDictionary();
+		int termCount = dictionary.size();
+		int tableSize = TermDictionary.tableSizeFor((int) Math.min(Math.ceil(termCount / MAX_LOAD_FACTOR),
+				Integer.MAX_VALUE));
+		int mask = tableSize - 1;
+
+		//Hash every term, keeping the fastest pass
+		int[] hashes = new int[termCount];
+		long bestNanos = Long.MAX_VALUE;
+		for (int pass = 0; pass < TIMING_PASSES; pass++) {
+			long start = System.nanoTime();
+			for (int id = 0; id < termCount; id++) {
+				hashes[id] = dictionary.hash(id, function);
+			}
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+		}
+
+		//Count the terms whose home is each bucket
+		int[] buckets = new int[tableSize];
+		for (int hash : hashes) {
+			buckets[hash & mask]++;
+		}
+		int occupiedBuckets = 0, longestBucket = 0;
+		double sumOfSquares = 0;
+		for (int count : buckets) {
+			if (count > 0) occupiedBuckets++;
+			longestBucket = Math.max(longestBucket, count);
+			sumOfSquares += (double) count * count;
+		}
+
+		//Place the terms by linear probing. Which slots end up used, and the total distance terms are moved from
+		//their homes, do not depend on the order terms are added in, so the terms can be swept along the table a
+		//bucket at a time instead of being probed for one by one. Terms still waiting for a slot at the end of the
+		//table wrap around to the start
+		boolean[] used = new boolean[tableSize];
+		long totalProbes = termCount;
+		int waiting = 0;
+		for (int slot = 0; slot < tableSize; slot++) {
+			waiting += buckets[slot];
+			if (waiting > 0) {
+				used[slot] = true;
+				waiting--;
+			}
+			totalProbes += waiting;
+		}
+		for (int slot = 0; waiting > 0; slot++) {
+			if (!used[slot]) {
+				used[slot] = true;
+				waiting--;
+			}
+			totalProbes += waiting;
+		}
+
+		//Every probe sequence lies within a run of used slots. The table is never full, so start after an unused slot
+		int longestRun = 0, run = 0, empty = 0;
+		while (termCount > 0 && used[empty]) empty++;
+		for (int i = 1; i <= tableSize; i++) {
+			if (used[(empty + i) & mask]) longestRun = Math.max(longestRun, ++run);
+			else run = 0;
+		}
+
+		//A uniform hash leaves a bucket empty with probability (1 - 1/m)^n, and its chi-squared statistic has the
+		//expected value m - 1
+		double expectedEmpty = tableSize * Math.pow(1 - 1.0 / tableSize, termCount);
+		double expectedCollisions = termCount - (tableSize - expectedEmpty);
+		double chiSquared = termCount == 0 ? 0 : sumOfSquares * tableSize / termCount - termCount;
+		double chiSquaredRatio = tableSize > 1 ? chiSquared / (tableSize - 1) : 0;
+
+		return new HashQualityReport(String.valueOf(function), termCount, tableSize, occupiedBuckets, longestBucket,
+				longestRun, expectedCollisions, chiSquaredRatio, termCount == 0 ? 0 : (double) totalProbes / termCount,
+				termCount == 0 ? 0 : (double) bestNanos / termCount);
+	}
+
+	/**
+	 * Measure how each StandardTermHash spreads the terms of a concordance
+	 * @param cds the concordance whose terms are hashed
+	 * @return a report for each standard hash function, in declaration order
+	 */
+	public static ArrayList<HashQualityReport> compare(ConcordanceDataStructure cds) {
+		ArrayList<HashQualityReport> reports = new ArrayList<>();
+		for (StandardTermHash function : StandardTermHash.values()) {
+			reports.add(analyze(cds, function));
+		}
+		return reports;
+	}
+
+	/**
+	 * Get the name of the hash function measured
+	 * @return the hash function's name
+	 */
+	public String getHashName() {
+		return hashName;
+	}
+
+	/**
+	 * Get the number of distinct terms hashed
+	 * @return the number of terms
+	 */
+	public int getTermCount() {
+		return termCount;
+	}
+
+	/**
+	 * Get the number of buckets of the table the terms were spread over
+	 * @return the table size, a power of two
+	 */
+	public int getTableSize() {
+		return tableSize;
+	}
+
+	/**
+	 * Get the number of terms whose home bucket already held another term
+	 * @return the number of collisions
+	 */
+	public int getCollisions() {
+		return termCount - occupiedBuckets;
+	}
+
+	/**
+	 * Get the number of collisions a uniformly random hash would be expected to give
+	 * @return the expected number of collisions
+	 */
+	public double getExpectedCollisions() {
+		return expectedCollisions;
+	}
+
+	/**
+	 * Get the largest number of terms sharing one home bucket
+	 * @return the length of the longest bucket
+	 */
+	public int getLongestBucket() {
+		return longestBucket;
+	}
+
+	/**
+	 * Get the chi-squared statistic of the bucket counts divided by its expected value for a uniform hash
+	 * @return about 1 for an even spread, more for a clumped one
+	 */
+	public double getChiSquaredRatio() {
+		return chiSquaredRatio;
+	}
+
+	/**
+	 * Get the mean number of slots a lookup of a present term examines under linear probing
+	 * @return the mean probe length
+	 */
+	public double getMeanProbes() {
+		return meanProbes;
+	}
+
+	/**
+	 * Get the length of the longest run of used slots under linear probing, which bounds the probes of any lookup
+	 * @return the number of slots in the longest run
+	 */
+	public int getLongestRun() {
+		return longestRun;
+	}
+
+	/**
+	 * Get the time taken to hash a term
+	 * @return the mean time per term of the fastest pass, in nanoseconds
+	 */
+	public double getNanosPerHash() {
+		return nanosPerHash;
+	}
+
+	/**
+	 * Convert the report to a single line of text
+	 * @return the report as a String
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"%-8s %d terms in %d buckets: %d collisions (%.0f expected), longest bucket %d, chi-squared ratio %.2f, "
+						+ "mean probes %.2f, longest run %d, %.1f ns/hash",
+				hashName, termCount, tableSize, getCollisions(), expectedCollisions, longestBucket, chiSquaredRatio,
+				meanProbes, longestRun, nanosPerHash);
+	}
+
+	/**
+	 * Print a report for each StandardTermHash over the terms of a corpus
+	 * @param args the path of the corpus file
+	 * @throws Exception if the corpus cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: java HashQualityReport <corpus file>");
+			System.exit(2);
+		}
+
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(1 << 16);
+		new MappedFileIngester().ingest(new File(args[0]), cds);
+
+		for (HashQualityReport report : compare(cds)) {
+			System.out.println(report);
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a UTF-8 (or plain ASCII) text file into a ConcordanceDataStructure by memory-mapping it and
+ * tokenizing directly over the mapped bytes. No Scanner is involved and no String is built for a line.
+ * ASCII bytes are handled without any decoding; other bytes are decoded from UTF-8 by ConcordanceTokenizer.
+ *
+ * Files larger than a single mapping are read as a series of windows. Tokenizer state (the partial word,
+ * a partially decoded character and the line counter) carries across window boundaries, so a word or line
+ * split between two windows is stitched back together.
+ */
+public class MappedFileIngester {
+
+	//Default size of each mapped window. A single mapping cannot exceed Integer.MAX_VALUE bytes
+	public static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+	//Size of each block read when looking for the last line terminator
+	private static final int SCAN_BLOCK_SIZE = 1 << 16;
+
+	private final long windowSize;
+
+	/**
+	 * Create an ingester that maps files in windows of the default size
+	 */
+	public MappedFileIngester() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Create an ingester that maps files in windows of the given size
+	 * @param windowSize the number of bytes to map at once
+	 * @throws IllegalArgumentException if the window size is not positive or is larger than a single mapping allows
+	 */
+	public MappedFileIngester(long windowSize) {
+		if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE);
+		}
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Add every word of a file to a CDS. Words are separated by spaces and lines end with \n, \r, \r\n, or the
+	 * UTF-8 encoding of U+0085, U+2028 or U+2029
+	 * @param input the file to be read
+	 * @param cds the CDS, or other ConcordanceTermSink, to add the words to
+	 * @return the number of lines read
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public int ingest(File input, ConcordanceTermSink cds) throws IOException {
+		try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			return ingest(channel, 0, channel.size(), cds, 1);
+		}
+	}
+
+	/**
+	 * Add every word in a range of bytes of a file to a CDS, numbering lines from a given line
+	 * @param channel the open file to be read
+	 * @param start the offset of the first byte to read
+	 * @param end the offset after the last byte to read
+	 * @param cds the CDS, or other ConcordanceTermSink, to add the words to
+	 * @param firstLine the line number given to the first line in the range
+	 * @return the number of the last line read, or firstLine - 1 if the range is empty
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public int ingest(FileChannel channel, long start, long end, ConcordanceTermSink cds, int firstLine) throws IOException {
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds, firstLine);
+
+		//Map and scan the range one window at a time. The tokenizer carries its state between windows
+		for (long position = start; position < end; position += windowSize) {
+			int length = (int) Math.min(windowSize, end - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			tokenizer.tokenize(window, 0, length);
+		}
+
+		return tokenizer.finish();
+	}
+
+	/**
+	 * Find the end of the last complete line of a file, so that a line still being written is not read.
+	 * A line is complete once its terminator is known: a \n, the whole UTF-8 encoding of U+0085, U+2028 or
+	 * U+2029, or a \r followed by something other than \n. A \r at the very end of the file could still be
+	 * followed by the \n of a \r\n pair, so the line it ends is not yet treated as complete
+	 * @param channel the open file to be scanned
+	 * @param start the offset from which to look for line terminators
+	 * @return the offset just past the terminator of the last complete line, or start if there is none
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long endOfLastLine(FileChannel channel, long start) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+
+		//Scan backwards from the end of the file one block at a time, remembering the two unsigned bytes after the
+		//current one, or -1 past the end of the file
+		int following = -1, second = -1;
+		for (long blockEnd = channel.size(); blockEnd > start; ) {
+			long blockStart = Math.max(start, blockEnd - SCAN_BLOCK_SIZE);
+			block.clear();
+			block.limit((int) (blockEnd - blockStart));
+			while (block.hasRemaining()) {
+				if (channel.read(block, blockStart + block.position()) < 0) throw new EOFException("File shrank while being read");
+			}
+
+			for (int i = block.limit() - 1; i >= 0; i--) {
+				int b = block.get(i) & 0xFF;
+				if (b == '\n' || (b == '\r' && following != -1 && following != '\n')) return blockStart + i + 1;
+
+				//U+0085 is C2 85, and U+2028 and U+2029 are E2 80 A8 and E2 80 A9
+				if (b == 0xC2 && following == 0x85) return blockStart + i + 2;
+				if (b == 0xE2 && following == 0x80 && (second == 0xA8 || second == 0xA9)) return blockStart + i + 3;
+				second = following;
+				following = b;
+			}
+			blockEnd = blockStart;
+		}
+
+		return start;
+	}
+
+}
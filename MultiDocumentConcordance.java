@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A concordance over many documents. Terms are interned by a TermDictionary as in ConcordanceDataStructure, and
+ * each term's postings are (document, line) pairs held by a DocumentPostingsList, grouped by document. The
+ * documents themselves are named by a DocumentTable shared by every concordance built over the same documents.
+ *
+ * A concordance is built by indexing each document on its own into a ConcordanceDataStructure and adding that
+ * with addDocument. Documents may be added in any order, and several concordances built over disjoint sets of
+ * documents on different threads can be combined with merge, so the result does not depend on which thread
+ * indexed which document. A single concordance is not thread-safe.
+ *
+ * Terms are listed in the order of a single-document concordance: by the term with every apostrophe removed.
+ * Terms that differ only by apostrophes are listed in String order. Every document must be indexed with the
+ * concordance's TermNormalizer, which lookups use as well.
+ */
+public class MultiDocumentConcordance {
+
+	//Number of terms at which showAll sorts in parallel
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+	//Size of the hash table when a concordance is created. The table grows on its own
+	private static final int INITIAL_TABLE_SIZE = 1 << 11;
+
+	//Capacity of the postings array when a concordance is created
+	private static final int INITIAL_POSTINGS_CAPACITY = 1 << 6;
+
+	/**
+	 * Orders Entries for a listing
+	 */
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int result = ConcordanceOrder.compareKeys(e1.key, e2.key);
+			return result != 0 ? result : e1.word.compareTo(e2.word);
+		}
+	};
+
+	private final DocumentTable documentTable;
+	private final TermDictionary dictionary;
+	private final TermNormalizer termNormalizer;
+
+	//The postings of each term, indexed by the term's id
+	private DocumentPostingsList[] postings;
+
+	/**
+	 * Create an empty MultiDocumentConcordance that hashes terms with the default hash function
+	 * @param documentTable the table naming the documents that will be added
+	 */
+	public MultiDocumentConcordance(DocumentTable documentTable) {
+		this(documentTable, TermDictionary.DEFAULT_HASH_FUNCTION);
+	}
+
+	/**
+	 * Create an empty MultiDocumentConcordance
+	 * @param documentTable the table naming the documents that will be added
+	 * @param hashFunction the function that hashes terms
+	 */
+	public MultiDocumentConcordance(DocumentTable documentTable, TermHashFunction hashFunction) {
+		this(documentTable, hashFunction, TermNormalizer.DEFAULT);
+	}
+
+	/**
+	 * Create an empty MultiDocumentConcordance over documents indexed with a given normalizer
+	 * @param documentTable the table naming the documents that will be added
+	 * @param hashFunction the function that hashes terms
+	 * @param termNormalizer the normalizer the documents are indexed with, also used for lookups
+	 */
+	public MultiDocumentConcordance(DocumentTable documentTable, TermHashFunction hashFunction,
+			TermNormalizer termNormalizer) {
+		this.documentTable = documentTable;
+		this.dictionary = new TermDictionary(INITIAL_TABLE_SIZE, hashFunction);
+		this.termNormalizer = termNormalizer;
+		this.postings = new DocumentPostingsList[INITIAL_POSTINGS_CAPACITY];
+	}
+
+	/**
+	 * Add the terms of one document. Runs in time linear in the number of distinct terms of the document
+	 * @param document the id of the document in the document table
+	 * @param cds the concordance of the document alone. It is not modified
+	 * @throws IllegalArgumentException if the document has already been added, or was indexed with another
+	 * normalizer
+	 */
+	public void addDocument(int document, ConcordanceDataStructure cds) {
+		if (cds.getTermNormalizer() != termNormalizer) {
+			throw new IllegalArgumentException("Document " + document + " was indexed with another normalizer");
+		}
+
+		TermDictionary other = cds.getDictionary();
+		for (int id = 0; id < other.size(); id++) {
+			postingsFor(dictionary.add(other, id)).addDocument(document, cds.postingsOf(id));
+		}
+	}
+
+	/**
+	 * Combine another MultiDocumentConcordance over the same document table into this one. Terms new to this
+	 * concordance are added, and the postings of matching terms are joined
+	 * @param other the concordance to merge into this one. It is not modified
+	 * @throws IllegalArgumentException if a document has been added to both concordances, or the concordances use
+	 * different normalizers
+	 */
+	public void merge(MultiDocumentConcordance other) {
+		if (other.termNormalizer != termNormalizer) {
+			throw new IllegalArgumentException("The concordances use different normalizers");
+		}
+
+		for (int id = 0; id < other.dictionary.size(); id++) {
+			postingsFor(dictionary.add(other.dictionary, id)).addAll(other.postings[id]);
+		}
+	}
+
+	/**
+	 * Get the postings of a term, creating them if the term was just added to the dictionary
+	 * @param id the id of the term
+	 * @return the postings of the term
+	 */
+	private DocumentPostingsList postingsFor(int id) {
+		if (id < postings.length && postings[id] != null) return postings[id];
+
+		if (id == postings.length) postings = Arrays.copyOf(postings, postings.length * 2);
+		postings[id] = new DocumentPostingsList();
+		return postings[id];
+	}
+
+	/**
+	 * Get the table naming the documents of this concordance
+	 * @return the document table
+	 */
+	public DocumentTable getDocumentTable() {
+		return documentTable;
+	}
+
+	/**
+	 * Get the normalizer the documents were indexed with
+	 * @return the normalizer
+	 */
+	public TermNormalizer getTermNormalizer() {
+		return termNormalizer;
+	}
+
+	/**
+	 * Get the number of distinct terms over every document
+	 * @return the number of terms
+	 */
+	public int getTermCount() {
+		return dictionary.size();
+	}
+
+	/**
+	 * Get the documents and lines on which a word occurs. The word is normalized by the concordance's
+	 * TermNormalizer, the way the documents were
+	 * @param word the word to look up
+	 * @return the word's postings, which callers must not modify, or null if the word is not in the concordance
+	 */
+	public DocumentPostingsList lookup(String word) {
+		int id = dictionary.find(termNormalizer.normalize(word));
+		return id < 0 ? null : postings[id];
+	}
+
+	/**
+	 * Get the number of bytes taken by the terms and postings, counting the full capacity of their arrays
+	 * @return the estimated size in bytes, not counting the document table
+	 */
+	public long getByteSize() {
+		long bytes = dictionary.getByteSize() + postings.length * 8L;
+		for (int id = 0; id < dictionary.size(); id++) {
+			bytes += postings[id].getByteSize();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Display every word with its documents and lines
+	 * @return an ArrayList holding, for each word, the word, a colon, and each document it occurs in followed by
+	 * its lines in parentheses, ending with a newline character. For example "whale: a.txt (3, 9), b.txt (1)\n"
+	 */
+	public ArrayList<String> showAll() {
+		Entry[] entries = sortedEntries();
+
+		ArrayList<String> returnList = new ArrayList<>(entries.length);
+		StringBuilder line = new StringBuilder();
+		for (Entry entry : entries) {
+			line.setLength(0);
+			line.append(entry.word).append(": ");
+			entry.postings.appendTo(line, documentTable);
+			returnList.add(line.append('\n').toString());
+		}
+
+		return returnList;
+	}
+
+	/**
+	 * Write every word, in the same order and format as showAll, without building a String for each line
+	 * @param writer the writer receiving the lines
+	 * @throws IOException if the writer fails
+	 */
+	public void writeAll(ConcordanceWriter writer) throws IOException {
+		for (Entry entry : sortedEntries()) {
+			writer.write(entry.word, entry.postings, documentTable);
+		}
+	}
+
+	/**
+	 * Collect every term and sort them into listing order
+	 * @return an array of every term, in the order showAll lists them
+	 */
+	private Entry[] sortedEntries() {
+		Entry[] entries = new Entry[dictionary.size()];
+		for (int id = 0; id < entries.length; id++) {
+			entries[id] = new Entry(dictionary.getTerm(id), postings[id]);
+		}
+
+		if (entries.length >= PARALLEL_SORT_THRESHOLD) Arrays.parallelSort(entries, ENTRY_ORDER);
+		else Arrays.sort(entries, ENTRY_ORDER);
+		return entries;
+	}
+
+	/**
+	 * A term together with its precomputed sort key, for sorting
+	 */
+	private static class Entry {
+		private final String key;
+		private final String word;
+		private final DocumentPostingsList postings;
+
+		/**
+		 * Create an Entry
+		 * @param word the word
+		 * @param postings the documents and lines of the word
+		 */
+		private Entry(String word, DocumentPostingsList postings) {
+			this.key = ConcordanceOrder.sortKey(word);
+			this.word = word;
+			this.postings = postings;
+		}
+	}
+
+}
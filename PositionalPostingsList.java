@@ -0,0 +1,241 @@
+import java.util.Arrays;
+
+/**
+ * The positions of one term of a concordance: a sorted list of unique (line, position) pairs, where a position
+ * is the index of the term among the words of its line, counting from 0.
+ *
+ * Pairs are held in a single byte array as variable-length encoded deltas. Each pair is the gap from the
+ * previous pair's line, followed by the gap from the previous position when the line is the same, or the
+ * position itself when the line is new. Lines and positions normally arrive in ascending order, so an add is
+ * an append, and a term that occurs once per line takes two bytes per occurrence in most text. A pair that
+ * arrives out of order is placed in sorted position by decoding and re-encoding the list.
+ *
+ * The list is read through a Cursor, which decodes it a line at a time.
+ */
+public class PositionalPostingsList {
+
+	//Capacity of the byte array allocated for the first pair
+	private static final int INITIAL_CAPACITY = 8;
+
+	//Longest encoding of a pair: two varints
+	private static final int MAX_PAIR_LENGTH = 2 * PostingsList.MAX_VAR_INT_SIZE;
+
+	private byte[] encoded;
+	private int length;
+
+	//Number of pairs, and the last pair of the list, from which the next appended pair is encoded
+	private int size;
+	private int lastLine, lastPosition;
+
+	/**
+	 * Create an empty PositionalPostingsList
+	 */
+	public PositionalPostingsList() {
+		encoded = new byte[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Record an occurrence of the term, unless it is already present
+	 * @param line the line number of the occurrence
+	 * @param position the index of the term among the words of the line
+	 */
+	public void add(int line, int position) {
+
+		//Common case: the pair follows every pair already held
+		if (size == 0 || line > lastLine || (line == lastLine && position > lastPosition)) {
+			append(line, position);
+			return;
+		}
+		if (line == lastLine && position == lastPosition) return;
+
+		//Out of order: decode, insert unless already present, and encode again
+		int[] lines = new int[size + 1], positions = new int[size + 1];
+		int count = decode(lines, positions);
+		int index = 0;
+		while (index < count && (lines[index] < line || (lines[index] == line && positions[index] < position))) {
+			index++;
+		}
+		if (index < count && lines[index] == line && positions[index] == position) return;
+		System.arraycopy(lines, index, lines, index + 1, count - index);
+		System.arraycopy(positions, index, positions, index + 1, count - index);
+		lines[index] = line;
+		positions[index] = position;
+
+		length = 0;
+		size = 0;
+		for (int i = 0; i <= count; i++) {
+			append(lines[i], positions[i]);
+		}
+	}
+
+	/**
+	 * Add every pair of another list to this one, with its lines shifted by an offset
+	 * @param other the list whose pairs are added
+	 * @param lineOffset the amount added to each of the other list's lines
+	 */
+	public void addAll(PositionalPostingsList other, int lineOffset) {
+		Cursor cursor = other.cursor();
+		while (cursor.nextLine()) {
+			for (int i = 0; i < cursor.getPositionCount(); i++) {
+				add(cursor.getLine() + lineOffset, cursor.getPosition(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the number of (line, position) pairs in the list
+	 * @return the number of occurrences recorded
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of bytes the list's storage takes
+	 * @return the capacity of the encoded array in bytes
+	 */
+	public int getByteSize() {
+		return encoded.length;
+	}
+
+	/**
+	 * Create a cursor over the list, before its first line
+	 * @return a new Cursor
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Encode a pair that follows every pair already held
+	 * @param line the line number
+	 * @param position the position within the line
+	 */
+	private void append(int line, int position) {
+		if (length + MAX_PAIR_LENGTH > encoded.length) {
+			encoded = Arrays.copyOf(encoded, Math.max(length + MAX_PAIR_LENGTH, encoded.length * 2));
+		}
+
+		//Gaps are treated as unsigned, so even the first line (a gap from 0) may be any int
+		int lineGap = size == 0 ? line : line - lastLine;
+		length = PostingsList.writeVarInt(encoded, length, lineGap);
+		int positionGap = size == 0 || lineGap != 0 ? position : position - lastPosition;
+		length = PostingsList.writeVarInt(encoded, length, positionGap);
+
+		lastLine = line;
+		lastPosition = position;
+		size++;
+	}
+
+	/**
+	 * Decode every pair of the list
+	 * @param lines the array receiving the lines, at least size() long
+	 * @param positions the array receiving the positions, at least size() long
+	 * @return the number of pairs decoded
+	 */
+	private int decode(int[] lines, int[] positions) {
+		int count = 0;
+		Cursor cursor = cursor();
+		while (cursor.nextLine()) {
+			for (int i = 0; i < cursor.getPositionCount(); i++) {
+				lines[count] = cursor.getLine();
+				positions[count++] = cursor.getPosition(i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a PositionalPostingsList one line at a time, decoding every position of the term on a line into a
+	 * reused array. The list must not be added to while a cursor is in use
+	 */
+	public class Cursor {
+
+		//Index of the next byte to decode, and the number of pairs decoded so far
+		private int offset, pairsRead;
+
+		private int line;
+		private int[] positions = new int[4];
+		private int positionCount;
+
+		/**
+		 * Move to the next line holding the term
+		 * @return true if there was a next line, false if the list is finished
+		 */
+		public boolean nextLine() {
+			if (pairsRead == size) return false;
+
+			line = (pairsRead == 0 ? 0 : line) + readVarInt();
+			positions[0] = readVarInt();
+			positionCount = 1;
+			pairsRead++;
+
+			//Further pairs of the same line start with a line gap of 0, which is a single zero byte
+			while (pairsRead < size && encoded[offset] == 0) {
+				offset++;
+				if (positionCount == positions.length) positions = Arrays.copyOf(positions, positionCount * 2);
+				positions[positionCount] = positions[positionCount - 1] + readVarInt();
+				positionCount++;
+				pairsRead++;
+			}
+			return true;
+		}
+
+		/**
+		 * Move to the first line at or after a given line
+		 * @param target the line to move to
+		 * @return true if there is such a line, false if the list is finished
+		 */
+		public boolean advanceTo(int target) {
+			while (pairsRead == 0 || line < target) {
+				if (!nextLine()) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Get the current line
+		 * @return the line number
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Get the number of times the term occurs on the current line
+		 * @return the number of positions
+		 */
+		public int getPositionCount() {
+			return positionCount;
+		}
+
+		/**
+		 * Get a position of the term on the current line
+		 * @param index the index of the position, from 0 to getPositionCount() - 1, in ascending order of position
+		 * @return the position within the line
+		 */
+		public int getPosition(int index) {
+			return positions[index];
+		}
+
+		/**
+		 * Check whether the term occurs at a position of the current line
+		 * @param position the position to look for
+		 * @return true if the term is at that position
+		 */
+		public boolean hasPosition(int position) {
+			return Arrays.binarySearch(positions, 0, positionCount, position) >= 0;
+		}
+
+		/**
+		 * Decode the unsigned variable-length int at the cursor's offset, and move past it
+		 * @return the value
+		 */
+		private int readVarInt() {
+			int value = PostingsList.readVarInt(encoded, offset);
+			offset += PostingsList.varIntSize(value);
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,484 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * A sorted list of unique line numbers for one term of a concordance, together with the number of times the
+ * term occurred, which counts every occurrence including repeats on the same line.
+ *
+ * Lines normally arrive in ascending order, so an add is an append in amortized O(1) and a repeated line is
+ * recognised by comparing against the last line alone. Lines that arrive out of order are still placed in
+ * sorted position by a binary search.
+ *
+ * A list can be frozen once no more lines are expected. A frozen list holds its lines as variable-length
+ * encoded gaps between consecutive lines, which takes a single byte per line for a frequent term. Adding to
+ * a frozen list unfreezes it first.
+ */
+public class PostingsList implements PostingsView {
+
+	//Capacity of the array allocated for the first line
+	private static final int INITIAL_CAPACITY = 2;
+
+	//Longest encodings of an unsigned variable-length int and long: five and ten groups of 7 bits
+	static final int MAX_VAR_INT_SIZE = 5;
+	static final int MAX_VAR_LONG_SIZE = 10;
+
+	//Lines in ascending order while the list is unfrozen, null while it is frozen
+	private int[] pages;
+
+	//Gap-encoded lines while the list is frozen, null while it is unfrozen
+	private byte[] encoded;
+
+	private int size;
+	private int lastPage;
+
+	//Number of times a line has been added, counting repeats
+	private long occurrences;
+
+	/**
+	 * Create an empty PostingsList
+	 */
+	public PostingsList() {
+		pages = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Record an occurrence of the term on a line, adding the line to the list unless it is already present
+	 * @param page the line number to add
+	 */
+	public void add(int page) {
+		occurrences++;
+		if (encoded != null) thaw();
+
+		//Common case: lines arrive in ascending order, so the line is either a repeat of the last or new at the end
+		if (size == 0 || page > lastPage) {
+			if (size == pages.length) grow(size + 1);
+			pages[size++] = page;
+			lastPage = page;
+			return;
+		}
+		if (page == lastPage) return;
+
+		//Out of order: binary search for the position, and insert unless the line is already there
+		int low = 0, high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (pages[mid] < page) low = mid + 1;
+			else if (pages[mid] > page) high = mid - 1;
+			else return;
+		}
+		if (size == pages.length) grow(size + 1);
+		System.arraycopy(pages, low, pages, low + 1, size - low);
+		pages[low] = page;
+		size++;
+	}
+
+	/**
+	 * Add every line of another list to this one, shifted by an offset, along with its occurrences
+	 * @param other the list whose lines are added
+	 * @param pageOffset the amount added to each of the other list's lines
+	 */
+	public void addAll(PostingsList other, int pageOffset) {
+		if (other.size == 0) return;
+		if (encoded != null) thaw();
+
+		//add counts an occurrence per line, so the count is set from the other list's once the lines are in
+		long occurrencesBefore = occurrences;
+
+		int[] incoming = other.toArray();
+
+		//When every incoming line follows the lines already held, append them all in one pass
+		if (size == 0 || incoming[0] + pageOffset > lastPage) {
+			if (size + incoming.length > pages.length) grow(size + incoming.length);
+			for (int page : incoming) {
+				pages[size++] = page + pageOffset;
+			}
+			lastPage = pages[size - 1];
+		}
+
+		//Otherwise add the lines one at a time so they stay sorted and unique
+		else {
+			for (int page : incoming) {
+				add(page + pageOffset);
+			}
+		}
+		occurrences = occurrencesBefore + other.occurrences;
+	}
+
+	/**
+	 * Count occurrences of the term on lines that are already in the list. Used when lines saved apart from
+	 * their occurrence count are restored, since adding each line once counts a single occurrence per line
+	 * @param count the number of further occurrences
+	 */
+	void addOccurrences(long count) {
+		occurrences += count;
+	}
+
+	/**
+	 * Get the number of lines in the list
+	 * @return the number of lines
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of times the term occurred, counting each repeat on the same line
+	 * @return the number of occurrences
+	 */
+	@Override
+	public long getOccurrenceCount() {
+		return occurrences;
+	}
+
+	/**
+	 * Copy the lines of the list into a new array
+	 * @return an array of the lines in ascending order, sized to the number of lines
+	 */
+	@Override
+	public int[] toArray() {
+		int[] array = new int[size];
+		copyTo(array, 0);
+		return array;
+	}
+
+	/**
+	 * Copy the lines of the list into an existing array
+	 * @param dest the array to fill
+	 * @param offset the index of dest at which to start
+	 * @return the number of lines copied
+	 */
+	@Override
+	public int copyTo(int[] dest, int offset) {
+		if (encoded == null) {
+			System.arraycopy(pages, 0, dest, offset, size);
+			return size;
+		}
+
+		//Decode the gaps back into lines
+		int position = 0, page = 0;
+		for (int i = 0; i < size; i++) {
+			int gap = readVarInt(encoded, position);
+			position += varIntSize(gap);
+			page += gap;
+			dest[offset + i] = page;
+		}
+		return size;
+	}
+
+	/**
+	 * Pass each line of the list, in ascending order, to an action. A frozen list is decoded as it goes rather
+	 * than into an array, so nothing is allocated
+	 * @param action the action receiving each line
+	 */
+	@Override
+	public void forEachLine(IntConsumer action) {
+		if (encoded == null) {
+			for (int i = 0; i < size; i++) {
+				action.accept(pages[i]);
+			}
+			return;
+		}
+
+		int position = 0, page = 0;
+		for (int i = 0; i < size; i++) {
+			int gap = readVarInt(encoded, position);
+			position += varIntSize(gap);
+			page += gap;
+			action.accept(page);
+		}
+	}
+
+	/**
+	 * Append the lines of the list to a StringBuilder, separated by a comma and a space. A frozen list is
+	 * decoded as it goes
+	 * @param builder the StringBuilder to append to
+	 */
+	public void appendTo(StringBuilder builder) {
+		int position = 0, page = 0;
+		for (int i = 0; i < size; i++) {
+			if (i > 0) builder.append(", ");
+			if (encoded == null) page = pages[i];
+			else {
+				int gap = readVarInt(encoded, position);
+				position += varIntSize(gap);
+				page += gap;
+			}
+			builder.append(page);
+		}
+	}
+
+	/**
+	 * Compress the list into its gap-encoded form. Each gap between consecutive lines is stored in 7-bit
+	 * groups, so gaps under 128 take a single byte
+	 */
+	public void freeze() {
+		if (encoded != null) return;
+
+		byte[] buffer = new byte[size * MAX_VAR_INT_SIZE];
+		int position = 0, previous = 0;
+		for (int i = 0; i < size; i++) {
+			//Gaps are treated as unsigned, so even the first line (a gap from 0) may be any int
+			position = writeVarInt(buffer, position, pages[i] - previous);
+			previous = pages[i];
+		}
+
+		encoded = new byte[position];
+		System.arraycopy(buffer, 0, encoded, 0, position);
+		pages = null;
+	}
+
+	/**
+	 * Get the number of bytes the gap-encoded form of the list takes
+	 * @return the encoded size in bytes
+	 */
+	public int encodedSize() {
+		if (encoded != null) return encoded.length;
+
+		int bytes = 0, previous = 0;
+		for (int i = 0; i < size; i++) {
+			bytes += varIntSize(pages[i] - previous);
+			previous = pages[i];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write the gap-encoded form of the list, as produced by freeze, to an output
+	 * @param out the output to write to
+	 * @throws IOException if the output fails
+	 */
+	public void writeEncoded(DataOutput out) throws IOException {
+		if (encoded != null) {
+			out.write(encoded);
+			return;
+		}
+
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			writeVarInt(out, pages[i] - previous);
+			previous = pages[i];
+		}
+	}
+
+	/**
+	 * Decode gap-encoded lines from a buffer, as written by writeEncoded
+	 * @param buffer the buffer holding the encoded lines. Its position and limit are not used or changed
+	 * @param position the index of the first encoded byte
+	 * @param count the number of lines to decode
+	 * @param dest the array receiving the lines
+	 * @param offset the index of dest at which to start
+	 * @return the index just past the last byte decoded
+	 */
+	public static int decode(ByteBuffer buffer, int position, int count, int[] dest, int offset) {
+		int page = 0;
+		for (int i = 0; i < count; i++) {
+			int gap = readVarInt(buffer, position);
+			position += varIntSize(gap);
+			page += gap;
+			dest[offset + i] = page;
+		}
+		return position;
+	}
+
+	/**
+	 * Get the number of bytes an unsigned variable-length int takes
+	 * @param value the value, treated as unsigned
+	 * @return the number of bytes, from 1 to 5
+	 */
+	public static int varIntSize(int value) {
+		return varLongSize(value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Get the number of bytes an unsigned variable-length long takes
+	 * @param value the value, treated as unsigned
+	 * @return the number of bytes, from 1 to 10
+	 */
+	public static int varLongSize(long value) {
+		int bytes = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			bytes++;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write an unsigned variable-length int: 7 bits per byte, low bits first, with the high bit of each byte
+	 * set when more bytes follow
+	 * @param out the output to write to
+	 * @param value the value, treated as unsigned
+	 * @throws IOException if the output fails
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Write an unsigned variable-length long, encoded the same way as writeVarInt, so a value that fits in an
+	 * unsigned int has the same bytes either way
+	 * @param out the output to write to
+	 * @param value the value, treated as unsigned
+	 * @throws IOException if the output fails
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Write an unsigned variable-length int, encoded as writeVarInt encodes it, into an array
+	 * @param dest the array, which must have room for varIntSize(value) bytes from offset
+	 * @param offset the index at which to write
+	 * @param value the value, treated as unsigned
+	 * @return the index just past the value
+	 */
+	static int writeVarInt(byte[] dest, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			dest[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		dest[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Read an unsigned variable-length int, as written by writeVarInt. Every reader of the encoding decodes
+	 * through this method. The value takes varIntSize(value) bytes, since the writers never pad an encoding
+	 * @param buffer the buffer holding the value. Its position and limit are not used or changed
+	 * @param position the index of the first byte of the value
+	 * @return the value
+	 */
+	static int readVarInt(ByteBuffer buffer, int position) {
+		return (int) readVarLong(buffer, position);
+	}
+
+	/**
+	 * Read an unsigned variable-length int, as written by writeVarInt, from an array. The array counterpart of
+	 * readVarLong(ByteBuffer, int), for frozen lists, which decode their own bytes without wrapping them
+	 * @param bytes the array holding the value
+	 * @param position the index of the first byte of the value
+	 * @return the value
+	 */
+	static int readVarInt(byte[] bytes, int position) {
+		int value = 0, shift = 0;
+		byte b;
+		do {
+			b = bytes[position++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Read an unsigned variable-length long, as written by writeVarLong or writeVarInt. This holds the decoding
+	 * loop for buffers, such as mapped index files and the bytes collected from a stream
+	 * @param buffer the buffer holding the value. Its position and limit are not used or changed
+	 * @param position the index of the first byte of the value
+	 * @return the value
+	 */
+	static long readVarLong(ByteBuffer buffer, int position) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Read an unsigned variable-length int, as written by writeVarInt, from a stream. The bytes of the value are
+	 * collected and then decoded by readVarLong(ByteBuffer, int)
+	 * @param in the stream to read from
+	 * @param scratch a buffer of at least MAX_VAR_INT_SIZE bytes to collect the value in, backed by an array
+	 * @return the value
+	 * @throws java.io.EOFException if the stream ends part way through the value
+	 * @throws IOException if the stream cannot be read, or the value runs past MAX_VAR_INT_SIZE bytes
+	 */
+	static int readVarInt(DataInput in, ByteBuffer scratch) throws IOException {
+		return (int) readVarLong(in, scratch, MAX_VAR_INT_SIZE);
+	}
+
+	/**
+	 * Read an unsigned variable-length long, as written by writeVarLong, from a stream
+	 * @param in the stream to read from
+	 * @param scratch a buffer of at least MAX_VAR_LONG_SIZE bytes to collect the value in, backed by an array
+	 * @return the value
+	 * @throws java.io.EOFException if the stream ends part way through the value
+	 * @throws IOException if the stream cannot be read, or the value runs past MAX_VAR_LONG_SIZE bytes
+	 */
+	static long readVarLong(DataInput in, ByteBuffer scratch) throws IOException {
+		return readVarLong(in, scratch, MAX_VAR_LONG_SIZE);
+	}
+
+	/**
+	 * Collect the bytes of a variable-length value from a stream and decode them
+	 * @param in the stream to read from
+	 * @param scratch a buffer of at least maxSize bytes to collect the value in, backed by an array
+	 * @param maxSize the most bytes the value may take
+	 * @return the value
+	 * @throws IOException if the stream cannot be read or ends early, or the value runs past maxSize bytes
+	 */
+	private static long readVarLong(DataInput in, ByteBuffer scratch, int maxSize) throws IOException {
+		byte[] bytes = scratch.array();
+		int length = 0;
+		do {
+			if (length == maxSize) throw new IOException("Variable-length value is over " + length + " bytes");
+			bytes[length] = in.readByte();
+		} while (bytes[length++] < 0);
+		return readVarLong(scratch, 0);
+	}
+
+	/**
+	 * Get the number of bytes the list's storage takes: the whole int array while it is unfrozen, or the
+	 * encoded gaps while it is frozen. Safe to call from another thread, though the size may then be out of date
+	 * @return the size of the storage in bytes
+	 */
+	public int getByteSize() {
+		//Freezing sets one array before clearing the other, so read each once
+		byte[] gaps = encoded;
+		int[] lines = pages;
+		if (gaps != null) return gaps.length;
+		return lines == null ? 0 : lines.length * Integer.BYTES;
+	}
+
+	/**
+	 * Check whether the list is in its gap-encoded form
+	 * @return true if the list is frozen
+	 */
+	public boolean isFrozen() {
+		return encoded != null;
+	}
+
+	/**
+	 * Decode a frozen list back into an array of lines so it can be added to
+	 */
+	private void thaw() {
+		int[] decoded = new int[Math.max(size, INITIAL_CAPACITY)];
+		copyTo(decoded, 0);
+		pages = decoded;
+		encoded = null;
+	}
+
+	/**
+	 * Grow the array of lines, at least doubling its capacity
+	 * @param capacity the smallest capacity needed
+	 */
+	private void grow(int capacity) {
+		int[] larger = new int[Math.max(capacity, pages.length * 2)];
+		System.arraycopy(pages, 0, larger, 0, size);
+		pages = larger;
+	}
+
+}
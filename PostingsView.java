@@ -0,0 +1,44 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only view of the line numbers of one term of a concordance, in ascending order, and of how often the
+ * term occurred. A view reads the concordance's own storage, so it sees later changes to the term and nothing
+ * is copied until a method is asked to copy.
+ */
+public interface PostingsView {
+
+	/**
+	 * Get the number of lines
+	 * @return the number of lines
+	 */
+	public int size();
+
+	/**
+	 * Get the number of times the term occurred, counting each repeat on the same line
+	 * @return the number of occurrences, at least size()
+	 */
+	public long getOccurrenceCount();
+
+	/**
+	 * Copy the lines into an existing array
+	 * @param dest the array to fill, which must have room for size() lines from offset
+	 * @param offset the index of dest at which to start
+	 * @return the number of lines copied
+	 * @throws IndexOutOfBoundsException if dest is too small
+	 */
+	public int copyTo(int[] dest, int offset);
+
+	/**
+	 * Copy the lines into a new array
+	 * @return an array of the lines, sized to the number of lines
+	 */
+	public int[] toArray();
+
+	/**
+	 * Pass each line, in ascending order, to an action. Nothing is allocated, even for compressed lines, which
+	 * are decoded straight from their bytes
+	 * @param action the action receiving each line
+	 */
+	public void forEachLine(IntConsumer action);
+
+}
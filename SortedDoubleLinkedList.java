@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
@@ -64,6 +66,93 @@ public class SortedDoubleLinkedList<T extends Comparable<T>> extends BasicDouble
 		}
 	}
 	
+	/**
+	 * Add every object of a collection to the list. The objects are sorted once and then linked in with the
+	 * list's own objects in a single pass, so adding m objects to a list of n costs O(m log m + n) rather than
+	 * a walk of the list per object. Objects equal to ones already in the list follow them, as with add
+	 * @param data the objects to be added
+	 * @return the list with the data added
+	 */
+	public SortedDoubleLinkedList<T> addAll(Collection<? extends T> data) {
+		if (data.isEmpty()) return this;
+		
+		//Sort a copy of the data. The sort is stable, so equal objects keep the collection's order
+		ArrayList<T> sorted = new ArrayList<>(data);
+		sorted.sort(comparator);
+		
+		//Chain the sorted objects into Nodes, then splice the chain into the list
+		Node first = null, last = null;
+		for (T item : sorted) {
+			Node newNode = new Node(item, last, null);
+			if (last == null) first = newNode;
+			else last.nextNode = newNode;
+			last = newNode;
+		}
+		splice(first, sorted.size());
+		
+		return this;
+	}
+	
+	/**
+	 * Move every object of another sorted list into this one in a single pass, reusing the other list's Nodes.
+	 * Merging lists of n and m objects costs O(n + m) and allocates no new Nodes. Objects of the other list that
+	 * are equal to ones in this list follow them, as if they had been added afterwards. The other list is left
+	 * empty
+	 * @param other the list whose objects are moved into this one, which should be sorted by an equivalent
+	 * Comparator
+	 * @return the list with the other list's data merged in
+	 * @throws IllegalArgumentException if other is this list
+	 */
+	public SortedDoubleLinkedList<T> mergeFrom(SortedDoubleLinkedList<T> other) {
+		if (other == this) throw new IllegalArgumentException("A list cannot be merged into itself");
+		if (other.nodeCount == 0) return this;
+		
+		splice(other.firstNode, other.nodeCount);
+		
+		//Leave the other list in the same state as a newly created empty list
+		other.firstNode = other.new Node();
+		other.lastNode = other.firstNode;
+		other.nodeCount = 0;
+		
+		return this;
+	}
+	
+	/**
+	 * Merge a sorted chain of Nodes into the list, relinking the Nodes of both in sorted order. On ties the
+	 * list's own Nodes come first
+	 * @param chain the first Node of the chain, linked forward through nextNode
+	 * @param chainCount the number of Nodes in the chain
+	 */
+	private void splice(Node chain, int chainCount) {
+		Node mine = firstNode, head = null, tail = null;
+		int mineLeft = nodeCount, chainLeft = chainCount;
+		
+		//Take the smaller front Node of the two each time, linking it after the last Node taken
+		while (mineLeft > 0 || chainLeft > 0) {
+			Node taken;
+			if (chainLeft == 0 || (mineLeft > 0 && comparator.compare(chain.data, mine.data) >= 0)) {
+				taken = mine;
+				mine = mine.nextNode;
+				mineLeft--;
+			}
+			else {
+				taken = chain;
+				chain = chain.nextNode;
+				chainLeft--;
+			}
+			
+			taken.previousNode = tail;
+			if (tail == null) head = taken;
+			else tail.nextNode = taken;
+			tail = taken;
+		}
+		tail.nextNode = null;
+		
+		firstNode = head;
+		lastNode = tail;
+		nodeCount += chainCount;
+	}
+	
 	/**
 	 * Unsupported method. The add function handles insertion of data where it is needed
 	 * @param data the object to be added
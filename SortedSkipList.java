@@ -0,0 +1,439 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted list of objects backed by an indexed skip list, with the public methods of SortedDoubleLinkedList.
+ *
+ * SortedDoubleLinkedList finds the place for each new object by walking from the head, so building a list of n
+ * objects takes O(n^2) comparisons. Here every node is linked at level 0 and, with probability 1/4 per level,
+ * at each level above, so a search skips over most of the list and add, remove and get by position take
+ * O(log n) expected time. Each link records how many nodes it passes over, which is what makes positional
+ * access logarithmic. Level 0 is also linked backwards, so the list can be iterated in either direction in
+ * linear time.
+ *
+ * As with SortedDoubleLinkedList, objects that compare equal are kept in the order they were added.
+ *
+ * @param <T> the type of objects held by the list
+ */
+public class SortedSkipList<T extends Comparable<T>> implements Iterable<T> {
+
+	//Most levels a node can be linked at. With a 1/4 chance of each extra level this covers any int-sized list
+	private static final int MAX_LEVEL = 16;
+
+	private final Comparator<T> comparator;
+
+	//Links into every level, holding no data
+	private final Node<T> head = new Node<>(null, MAX_LEVEL);
+
+	private Node<T> lastNode;
+
+	//Number of levels in use, at least 1
+	private int level = 1;
+
+	private int nodeCount;
+
+	//State of the generator choosing each node's level
+	private long seed = System.nanoTime() | 1;
+
+	//The last node before the search position at each level, and each one's position, reused by every search
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Node<T>[] update = new Node[MAX_LEVEL];
+	private final int[] rank = new int[MAX_LEVEL];
+
+	/**
+	 * Create an empty SortedSkipList
+	 * @param comparator the Comparator that will determine list sorting
+	 */
+	public SortedSkipList(Comparator<T> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Create a SortedSkipList with a single data point
+	 * @param data the object to be added
+	 * @param comparator the Comparator that will determine list sorting
+	 */
+	public SortedSkipList(T data, Comparator<T> comparator) {
+		this(comparator);
+		add(data);
+	}
+
+	/**
+	 * Add an object to the list, after any objects that compare equal to it
+	 * @param data the object to be added
+	 * @return this list, with the added data
+	 */
+	public SortedSkipList<T> add(T data) {
+
+		//Find the last node at each level that sorts no later than the data, and its position
+		Node<T> node = head;
+		for (int i = level - 1; i >= 0; i--) {
+			rank[i] = i == level - 1 ? 0 : rank[i + 1];
+			while (node.next[i] != null && comparator.compare(node.next[i].data, data) <= 0) {
+				rank[i] += node.span[i];
+				node = node.next[i];
+			}
+			update[i] = node;
+		}
+
+		//Levels new to the list start from the head, spanning the whole list
+		int nodeLevel = randomLevel();
+		for (int i = level; i < nodeLevel; i++) {
+			rank[i] = 0;
+			update[i] = head;
+			head.span[i] = nodeCount;
+		}
+		level = Math.max(level, nodeLevel);
+
+		//Link the new node in at each of its levels, splitting the span of the link it interrupts
+		Node<T> newNode = new Node<>(data, nodeLevel);
+		for (int i = 0; i < nodeLevel; i++) {
+			newNode.next[i] = update[i].next[i];
+			update[i].next[i] = newNode;
+			newNode.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+			update[i].span[i] = rank[0] - rank[i] + 1;
+		}
+
+		//Links above the new node now pass over one more node
+		for (int i = nodeLevel; i < level; i++) {
+			update[i].span[i]++;
+		}
+
+		newNode.previousNode = update[0] == head ? null : update[0];
+		if (newNode.next[0] != null) newNode.next[0].previousNode = newNode;
+		else lastNode = newNode;
+
+		//Clear the reused search path, so it never keeps a removed node reachable
+		Arrays.fill(update, null);
+		nodeCount++;
+
+		return this;
+	}
+
+	/**
+	 * Remove a specific object from the list. If there is more than one instance of the object in the list, only
+	 * the first is removed. The object is searched for among the objects that the list's own Comparator finds
+	 * equal to it, in O(log n) time. If none of those matches, the rest of the list is searched in linear time,
+	 * so a Comparator that disagrees with the list's order still finds the object
+	 * @param data the object to be removed
+	 * @param comparator the Comparator matching the argument data to the list data
+	 * @return this list, minus the removed object
+	 */
+	public SortedSkipList<T> remove(T data, Comparator<T> comparator) {
+
+		//Find the first node that does not sort before the data, and its position
+		Node<T> node = head;
+		int index = -1;
+		for (int i = level - 1; i >= 0; i--) {
+			while (node.next[i] != null && this.comparator.compare(node.next[i].data, data) < 0) {
+				index += node.span[i];
+				node = node.next[i];
+			}
+		}
+
+		//Check every node the list considers equal to the data
+		for (node = node.next[0], index++; node != null && this.comparator.compare(node.data, data) == 0;
+				node = node.next[0], index++) {
+			if (comparator.compare(data, node.data) == 0) {
+				unlink(index);
+				return this;
+			}
+		}
+
+		//Otherwise look through the whole list
+		index = 0;
+		for (node = head.next[0]; node != null; node = node.next[0], index++) {
+			if (comparator.compare(data, node.data) == 0) {
+				unlink(index);
+				break;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Get the object at a position in the list
+	 * @param index the zero-based position of the object
+	 * @return the object at that position
+	 * @throws IndexOutOfBoundsException if index is negative or not less than the size of the list
+	 */
+	public T get(int index) {
+		if (index < 0 || index >= nodeCount) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nodeCount);
+		}
+
+		//Nodes are counted from 1, so the head is at position 0
+		Node<T> node = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while (node.next[i] != null && traversed + node.span[i] <= index + 1) {
+				traversed += node.span[i];
+				node = node.next[i];
+			}
+			if (traversed == index + 1) return node.data;
+		}
+		return node.data;
+	}
+
+	/**
+	 * Get the data contained in the front of the list (non-destructive)
+	 * @return the first object of the list, or null if the list is empty
+	 */
+	public T getFirst() {
+		return nodeCount == 0 ? null : head.next[0].data;
+	}
+
+	/**
+	 * Get the data at the end of the list (non-destructive)
+	 * @return the last object of the list, or null if the list is empty
+	 */
+	public T getLast() {
+		return nodeCount == 0 ? null : lastNode.data;
+	}
+
+	/**
+	 * Get the number of objects in the list
+	 * @return the size of the list
+	 */
+	public int getSize() {
+		return nodeCount;
+	}
+
+	/**
+	 * Remove the first object from the list and obtain it
+	 * @return the object that had been first in the list, or null if the list is empty
+	 */
+	public T retrieveFirstElement() {
+		return nodeCount == 0 ? null : unlink(0);
+	}
+
+	/**
+	 * Remove the last object from the list and obtain it
+	 * @return the object that had been last in the list, or null if the list is empty
+	 */
+	public T retrieveLastElement() {
+		return nodeCount == 0 ? null : unlink(nodeCount - 1);
+	}
+
+	/**
+	 * Create an iterator for traversing the list in order
+	 * @return an Iterator object at list position 0
+	 */
+	@Override
+	public Iterator iterator() {
+		return new Iterator();
+	}
+
+	/**
+	 * Convert the list to an ArrayList of the same type
+	 * @return an ArrayList of all objects in the list, in order
+	 */
+	public ArrayList<T> toArrayList() {
+		ArrayList<T> array = new ArrayList<>(nodeCount);
+		for (Node<T> node = head.next[0]; node != null; node = node.next[0]) {
+			array.add(node.data);
+		}
+		return array;
+	}
+
+	/**
+	 * Create a String representation of the data in the list. Requires T to be a type with a usable toString method
+	 * @return a String representing the data in the list, or null if the list is empty
+	 */
+	@Override
+	public String toString() {
+		if (nodeCount == 0) return null;
+
+		StringBuilder returnString = new StringBuilder();
+		for (Node<T> node = head.next[0]; node != null; node = node.next[0]) {
+			returnString.append(node.data).append(' ');
+		}
+		return returnString.toString();
+	}
+
+	/**
+	 * Remove the node at a position in the list
+	 * @param index the zero-based position of the node, which must be in the list
+	 * @return the data of the removed node
+	 */
+	private T unlink(int index) {
+
+		//Find the node before the position at each level
+		Node<T> node = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while (node.next[i] != null && traversed + node.span[i] <= index) {
+				traversed += node.span[i];
+				node = node.next[i];
+			}
+			update[i] = node;
+		}
+		Node<T> removed = update[0].next[0];
+
+		//Links to the node take over its links. Links passing over it pass over one node fewer
+		for (int i = 0; i < level; i++) {
+			if (update[i].next[i] == removed) {
+				update[i].span[i] += removed.span[i] - 1;
+				update[i].next[i] = removed.next[i];
+			}
+			else update[i].span[i]--;
+		}
+
+		if (removed.next[0] != null) removed.next[0].previousNode = removed.previousNode;
+		else lastNode = removed.previousNode;
+		Arrays.fill(update, null);
+
+		while (level > 1 && head.next[level - 1] == null) {
+			level--;
+		}
+		nodeCount--;
+
+		return removed.data;
+	}
+
+	/**
+	 * Choose the number of levels for a new node: 1, plus one more with probability 1/4 each time
+	 * @return the number of levels, from 1 to MAX_LEVEL
+	 */
+	private int randomLevel() {
+		//An xorshift step. Each pair of trailing zero bits is a further level
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return Math.min(1 + Long.numberOfTrailingZeros(seed) / 2, MAX_LEVEL);
+	}
+
+	/**
+	 * A node of the list, linked forwards at each of its levels and backwards at level 0
+	 * @param <T> the type of the node's data
+	 */
+	private static class Node<T> {
+		private final T data;
+		private final Node<T>[] next;
+
+		//The number of level 0 steps each forward link covers
+		private final int[] span;
+
+		private Node<T> previousNode;
+
+		/**
+		 * Create a Node
+		 * @param data the data to be wrapped in the Node
+		 * @param levels the number of levels the Node is linked at
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private Node(T data, int levels) {
+			this.data = data;
+			this.next = new Node[levels];
+			this.span = new int[levels];
+		}
+	}
+
+	/**
+	 * An Iterator object for traversing the list in either direction. Positions are zero-based, as in
+	 * java.util.ListIterator. The list must not be modified while it is being iterated
+	 */
+	public class Iterator implements ListIterator<T> {
+		private Node<T> nextNode = head.next[0];
+		private int cursor;
+
+		/**
+		 * Determine if the Iterator is able to move to the next object in the list
+		 * @return true if there is a next object, and false otherwise
+		 */
+		@Override
+		public boolean hasNext() {
+			return nextNode != null;
+		}
+
+		/**
+		 * Advance the Iterator to the next object in the list
+		 * @return the next object in the list
+		 * @throws NoSuchElementException if there is no next object in the list
+		 */
+		@Override
+		public T next() throws NoSuchElementException {
+			if (nextNode == null) throw new NoSuchElementException("There are no more Nodes in the list");
+
+			T data = nextNode.data;
+			nextNode = nextNode.next[0];
+			cursor++;
+			return data;
+		}
+
+		/**
+		 * Determine if there is an object before the Iterator's position
+		 * @return true if there is a previous object, or false if not
+		 */
+		@Override
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		/**
+		 * Step back to the previous object in the list
+		 * @return the previous object in the list
+		 * @throws NoSuchElementException if there is no previous object to step back to
+		 */
+		@Override
+		public T previous() throws NoSuchElementException {
+			if (cursor == 0) throw new NoSuchElementException("There is no previous node in the list");
+
+			nextNode = nextNode == null ? lastNode : nextNode.previousNode;
+			cursor--;
+			return nextNode.data;
+		}
+
+		/**
+		 * Get the position of the object a call to next would return
+		 * @return the zero-based position, or the size of the list at its end
+		 */
+		@Override
+		public int nextIndex() {
+			return cursor;
+		}
+
+		/**
+		 * Get the position of the object a call to previous would return
+		 * @return the zero-based position, or -1 at the start of the list
+		 */
+		@Override
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		/**
+		 * Remove function not supported, as with SortedDoubleLinkedList. Use the list's remove method instead
+		 * @throws UnsupportedOperationException since operation is not implemented
+		 */
+		@Override
+		public void remove() throws UnsupportedOperationException {
+			throw new UnsupportedOperationException("Operation not implemented");
+		}
+
+		/**
+		 * Set function not supported, since it could break the order of the list
+		 * @param e not used
+		 * @throws UnsupportedOperationException since operation is not implemented
+		 */
+		@Override
+		public void set(T e) throws UnsupportedOperationException {
+			throw new UnsupportedOperationException("Operation not implemented");
+		}
+
+		/**
+		 * Add function not supported, since it could break the order of the list. Use the list's add method instead
+		 * @param e not used
+		 * @throws UnsupportedOperationException since operation is not implemented
+		 */
+		@Override
+		public void add(T e) throws UnsupportedOperationException {
+			throw new UnsupportedOperationException("Operation not implemented");
+		}
+	}
+
+}
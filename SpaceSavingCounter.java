@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Estimates the most frequent terms of a stream in a fixed amount of memory, using the Space-Saving algorithm
+ * of Metwally, Agrawal and El Abbadi.
+ *
+ * The counter keeps at most capacity terms, each with a count and an error. A term already kept has its count
+ * raised. A new term takes over the slot of the kept term with the lowest count: it inherits that count plus
+ * one, and the inherited part becomes its error. A count is therefore never too low and is at most its error
+ * too high, and any term that occurs more than total / capacity times is certain to be kept. Choosing a
+ * capacity a few times larger than the number of terms wanted in a report makes the top of the report exact
+ * for all but the flattest distributions.
+ *
+ * Kept terms are found through an open-addressing hash table and the lowest count through a min-heap, so each
+ * term costs one hash and O(log capacity) work, and nothing is allocated once every slot is in use unless a
+ * longer term than a slot has held arrives. As a ConcordanceTermSink the counter can be fed directly by a
+ * ConcordanceTokenizer or MappedFileIngester, without building a concordance. It can also be attached to a
+ * ConcordanceDataStructure or ConcordanceDataManager to count the terms of a build as they are added.
+ *
+ * Counting and reading the counts are synchronized, so topTerms may be called from another thread while terms
+ * are still being counted, and several builder threads may share one counter.
+ */
+public class SpaceSavingCounter implements ConcordanceTermSink {
+
+	//Hash function for finding kept terms
+	private static final TermHashFunction HASH_FUNCTION = StandardTermHash.XXHASH;
+
+	private final int capacity;
+
+	//The characters, length, hash, count and error of each kept term, indexed by slot
+	private final char[][] terms;
+	private final int[] lengths, hashes;
+	private final long[] counts, errors;
+	private int size;
+
+	//Slots ordered as a min-heap by count, and the position of each slot within the heap
+	private final int[] heap, heapPositions;
+
+	//Hash table of slots, each holding a slot index plus one, or 0 if unused
+	private final int[] table;
+
+	//Number of terms offered
+	private long total;
+
+	//Decides which terms are too short or too common to count when fed by a tokenizer
+	private volatile StopWordFilter filter = StopWordFilter.DEFAULT;
+
+	/**
+	 * Create a SpaceSavingCounter
+	 * @param capacity the number of terms to keep, which bounds the memory used
+	 * @throws IllegalArgumentException if capacity is less than 1 or more than 2^29
+	 */
+	public SpaceSavingCounter(int capacity) {
+		if (capacity < 1 || capacity > 1 << 29) throw new IllegalArgumentException("Capacity must be from 1 to 2^29");
+		this.capacity = capacity;
+
+		terms = new char[capacity][];
+		lengths = new int[capacity];
+		hashes = new int[capacity];
+		counts = new long[capacity];
+		errors = new long[capacity];
+		heap = new int[capacity];
+		heapPositions = new int[capacity];
+
+		//At most half full, so probe sequences stay short
+		table = new int[TermDictionary.tableSizeFor(capacity * 2)];
+	}
+
+	/**
+	 * Count one occurrence of a term
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 */
+	public synchronized void offer(char[] chars, int start, int length) {
+		total++;
+		int hash = HASH_FUNCTION.hash(chars, start, length);
+		int tableSlot = findSlot(chars, start, length, hash);
+
+		//A kept term: raise its count and let it sink below terms with lower counts
+		if (table[tableSlot] != 0) {
+			int slot = table[tableSlot] - 1;
+			counts[slot]++;
+			siftDown(heapPositions[slot]);
+			return;
+		}
+
+		//A new term takes a free slot while there is one, starting from a count of 0 with no error
+		int slot;
+		boolean replacing = size == capacity;
+		if (!replacing) {
+			slot = size;
+			heap[size] = slot;
+			heapPositions[slot] = size++;
+		}
+
+		//Otherwise it replaces the term with the lowest count, whose count becomes its error
+		else {
+			slot = heap[0];
+			remove(slot);
+			errors[slot] = counts[slot];
+			tableSlot = findSlot(chars, start, length, hash);
+		}
+
+		if (terms[slot] == null || terms[slot].length < length) terms[slot] = new char[length];
+		System.arraycopy(chars, start, terms[slot], 0, length);
+		lengths[slot] = length;
+		hashes[slot] = hash;
+		table[tableSlot] = slot + 1;
+
+		//A replacement still has the lowest count but may now be level with others, while a count of 1 is the
+		//lowest possible
+		counts[slot]++;
+		if (replacing) siftDown(0);
+		else siftUp(heapPositions[slot]);
+	}
+
+	/**
+	 * Count one occurrence of a term
+	 * @param term the term, already normalized the way the counter's other terms are
+	 */
+	public void offer(String term) {
+		offer(term.toCharArray(), 0, term.length());
+	}
+
+	/**
+	 * Get the estimated k most frequent terms, most frequent first and alphabetically among equal counts
+	 * @param k the number of terms wanted
+	 * @return an ArrayList of at most k terms with their estimated counts and errors
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public synchronized ArrayList<TermCount> topTerms(int k) {
+		if (k < 0) throw new IllegalArgumentException("k must not be negative");
+
+		TermCount[] kept = new TermCount[size];
+		for (int slot = 0; slot < size; slot++) {
+			kept[slot] = new TermCount(new String(terms[slot], 0, lengths[slot]), counts[slot], errors[slot]);
+		}
+		Arrays.sort(kept);
+
+		return new ArrayList<>(Arrays.asList(kept).subList(0, Math.min(k, kept.length)));
+	}
+
+	/**
+	 * Get the estimated count of a term
+	 * @param term the term, normalized the way the counter's other terms are
+	 * @return the term's estimated count, or 0 if it is not kept. A term that is not kept has occurred at most
+	 * getMinimumCount() times
+	 */
+	public synchronized long getCount(String term) {
+		char[] chars = term.toCharArray();
+		int tableSlot = findSlot(chars, 0, chars.length, HASH_FUNCTION.hash(chars, 0, chars.length));
+		return table[tableSlot] == 0 ? 0 : counts[table[tableSlot] - 1];
+	}
+
+	/**
+	 * Get the lowest count of any kept term, which bounds the count of every term that is not kept
+	 * @return the lowest count, or 0 while the counter has free slots
+	 */
+	public synchronized long getMinimumCount() {
+		return size < capacity ? 0 : counts[heap[0]];
+	}
+
+	/**
+	 * Get the number of terms offered to the counter
+	 * @return the total number of occurrences counted
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the number of terms the counter can keep
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set the filter deciding which terms are left out when the counter is fed by a tokenizer
+	 * @param filter the filter to apply to new terms
+	 */
+	public void setStopWordFilter(StopWordFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Check if a normalized term should be left out of the counts, according to the stop word filter
+	 * @param chars a buffer holding the term, cleaned up and lower-cased
+	 * @param length the number of characters in the term
+	 * @return true if the term is INVALID, and should not be counted
+	 */
+	@Override
+	public boolean isInvalid(char[] chars, int length) {
+		return filter.rejects(chars, length);
+	}
+
+	/**
+	 * Count a term that has already been cleaned up, validated and lower-cased. Called by ConcordanceTokenizer
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @param lineNum the line where the term occurs, which is not used
+	 */
+	@Override
+	public void addNormalized(char[] chars, int length, int lineNum) {
+		offer(chars, 0, length);
+	}
+
+	/**
+	 * Find the slot of the hash table that holds a term, or the unused slot where the term would be placed
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 * @param hash the hash of the term
+	 * @return the index of the matching or unused slot
+	 */
+	private int findSlot(char[] chars, int start, int length, int hash) {
+		int mask = table.length - 1;
+		for (int tableSlot = hash & mask; ; tableSlot = (tableSlot + 1) & mask) {
+			int slot = table[tableSlot] - 1;
+			if (slot < 0 || (hashes[slot] == hash && lengths[slot] == length
+					&& Arrays.equals(terms[slot], 0, length, chars, start, start + length))) return tableSlot;
+		}
+	}
+
+	/**
+	 * Remove a kept term from the hash table, moving later terms of its probe sequence back so that none of them
+	 * is cut off from its home slot by the gap
+	 * @param slot the slot of the term to remove
+	 */
+	private void remove(int slot) {
+		int mask = table.length - 1;
+		int gap = findSlot(terms[slot], 0, lengths[slot], hashes[slot]);
+
+		for (int next = (gap + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+
+			//A term can fill the gap if the gap lies between its home slot and where it sits now
+			int home = hashes[table[next] - 1] & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				table[gap] = table[next];
+				gap = next;
+			}
+		}
+		table[gap] = 0;
+	}
+
+	/**
+	 * Move a slot up the heap until its parent's count is no higher
+	 * @param position the slot's position in the heap
+	 */
+	private void siftUp(int position) {
+		int slot = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[slot]) break;
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = slot;
+		heapPositions[slot] = position;
+	}
+
+	/**
+	 * Move a slot down the heap until neither child's count is lower
+	 * @param position the slot's position in the heap
+	 */
+	private void siftDown(int position) {
+		int slot = heap[position];
+		while (true) {
+			int child = position * 2 + 1;
+			if (child >= size) break;
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+			if (counts[heap[child]] >= counts[slot]) break;
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = slot;
+		heapPositions[slot] = position;
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * The standard term hash functions. Each hashes the UTF-16 code units of a term, two characters to a 32-bit
+ * block where the function works in blocks. A term given as a CharSequence is read where it is rather than
+ * copied into an array, so hashing a String for a lookup allocates nothing.
+ */
+public enum StandardTermHash implements TermHashFunction {
+
+	/**
+	 * String.hashCode, with its high bits folded into its low bits as java.util.HashMap does. Cheap, but terms
+	 * that differ only near their end, such as numbered identifiers, get hashes close together
+	 */
+	STRING {
+		@Override
+		public int hash(char[] chars, int start, int length) {
+			int h = 0;
+			for (int i = start; i < start + length; i++) {
+				h = 31 * h + chars[i];
+			}
+			return h ^ (h >>> 16);
+		}
+
+		@Override
+		public int hash(CharSequence term) {
+			//A String caches its hash code
+			int h = 0;
+			if (term instanceof String) h = term.hashCode();
+			else {
+				for (int i = 0; i < term.length(); i++) {
+					h = 31 * h + term.charAt(i);
+				}
+			}
+			return h ^ (h >>> 16);
+		}
+	},
+
+	/**
+	 * MurmurHash3 (x86, 32-bit), over the term's characters taken two at a time
+	 */
+	MURMUR3 {
+		@Override
+		public int hash(char[] chars, int start, int length) {
+			int h = 0, end = start + (length & ~1);
+			for (int i = start; i < end; i += 2) {
+				h = mixBlock(h, chars[i] | (chars[i + 1] << 16));
+			}
+
+			//An odd final character makes a half block
+			if ((length & 1) != 0) h ^= scramble(chars[end]);
+			return finish(h, length);
+		}
+
+		@Override
+		public int hash(CharSequence term) {
+			int length = term.length(), h = 0, end = length & ~1;
+			for (int i = 0; i < end; i += 2) {
+				h = mixBlock(h, term.charAt(i) | (term.charAt(i + 1) << 16));
+			}
+
+			if ((length & 1) != 0) h ^= scramble(term.charAt(end));
+			return finish(h, length);
+		}
+
+		/**
+		 * Scramble a block of two characters
+		 * @param k the block
+		 * @return the scrambled block
+		 */
+		private int scramble(int k) {
+			k *= 0xCC9E2D51;
+			k = Integer.rotateLeft(k, 15);
+			return k * 0x1B873593;
+		}
+
+		/**
+		 * Mix a block of two characters into the hash
+		 * @param h the hash so far
+		 * @param k the block
+		 * @return the new hash
+		 */
+		private int mixBlock(int h, int k) {
+			h ^= scramble(k);
+			h = Integer.rotateLeft(h, 13);
+			return h * 5 + 0xE6546B64;
+		}
+
+		/**
+		 * Finalization mix: every bit of the result depends on every bit of the input
+		 * @param h the hash of every block
+		 * @param length the number of characters in the term
+		 * @return the hash
+		 */
+		private int finish(int h, int length) {
+			h ^= length * 2;
+			h ^= h >>> 16;
+			h *= 0x85EBCA6B;
+			h ^= h >>> 13;
+			h *= 0xC2B2AE35;
+			h ^= h >>> 16;
+			return h;
+		}
+	},
+
+	/**
+	 * The small-input path of xxHash32 applied to the whole term: each two characters are folded in with one
+	 * multiply and rotate, followed by xxHash's avalanche
+	 */
+	XXHASH {
+		private static final int PRIME1 = 0x9E3779B1, PRIME2 = 0x85EBCA77, PRIME3 = 0xC2B2AE3D, PRIME4 = 0x27D4EB2F,
+				PRIME5 = 0x165667B1;
+
+		@Override
+		public int hash(char[] chars, int start, int length) {
+			int h = PRIME5 + length * 2, end = start + (length & ~1);
+			for (int i = start; i < end; i += 2) {
+				h = mixBlock(h, chars[i] | (chars[i + 1] << 16));
+			}
+
+			//An odd final character is taken as its two bytes
+			if ((length & 1) != 0) h = mixLast(h, chars[end]);
+			return avalanche(h);
+		}
+
+		@Override
+		public int hash(CharSequence term) {
+			int length = term.length(), h = PRIME5 + length * 2, end = length & ~1;
+			for (int i = 0; i < end; i += 2) {
+				h = mixBlock(h, term.charAt(i) | (term.charAt(i + 1) << 16));
+			}
+
+			if ((length & 1) != 0) h = mixLast(h, term.charAt(end));
+			return avalanche(h);
+		}
+
+		/**
+		 * Mix a block of two characters into the hash
+		 * @param h the hash so far
+		 * @param block the block
+		 * @return the new hash
+		 */
+		private int mixBlock(int h, int block) {
+			h += block * PRIME3;
+			return Integer.rotateLeft(h, 17) * PRIME4;
+		}
+
+		/**
+		 * Mix an odd final character into the hash, a byte at a time
+		 * @param h the hash so far
+		 * @param c the character
+		 * @return the new hash
+		 */
+		private int mixLast(int h, char c) {
+			h += (c & 0xFF) * PRIME5;
+			h = Integer.rotateLeft(h, 11) * PRIME1;
+			h += (c >>> 8) * PRIME5;
+			return Integer.rotateLeft(h, 11) * PRIME1;
+		}
+
+		/**
+		 * Spread every bit of the hash over the whole result
+		 * @param h the hash of every character
+		 * @return the hash
+		 */
+		private int avalanche(int h) {
+			h ^= h >>> 15;
+			h *= PRIME2;
+			h ^= h >>> 13;
+			h *= PRIME3;
+			h ^= h >>> 16;
+			return h;
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Decides which normalized terms are left out of a concordance: terms shorter than a minimum length, and terms
+ * in a set of stop words.
+ *
+ * Stop words are held in an open-addressing hash set sized to at most half full, with each word's hash stored
+ * beside it, so a lookup costs one hash of the term and usually a single probe. Words are hashed by
+ * StandardTermHash.STRING, which takes a stop word's cached String hash. Lookups work directly on a range
+ * of characters, so a term can be rejected before any String is made for it. A filter is immutable and can be
+ * shared between threads and structures.
+ */
+public class StopWordFilter {
+
+	//Minimum term length used by the default filter
+	public static final int DEFAULT_MIN_LENGTH = 3;
+
+	//Hash function of the stop word table, set before DEFAULT is built with it
+	private static final TermHashFunction HASH = StandardTermHash.STRING;
+
+	/**
+	 * The default filter: "and" and "the" are stop words, and terms shorter than 3 characters are left out
+	 */
+	public static final StopWordFilter DEFAULT = new StopWordFilter(Arrays.asList("and", "the"), DEFAULT_MIN_LENGTH);
+
+	private final String[] words;
+	private final int[] hashes;
+	private final int mask;
+	private final int size;
+	private final int minLength;
+
+	/**
+	 * Create a StopWordFilter for terms normalized by the default TermNormalizer. Stop words are normalized the
+	 * same way: punctuation other than apostrophes is removed and the word is lower-cased
+	 * @param stopWords the stop words
+	 * @param minLength the minimum length of a term that is kept
+	 */
+	public StopWordFilter(Collection<String> stopWords, int minLength) {
+		this(stopWords, minLength, TermNormalizer.DEFAULT);
+	}
+
+	/**
+	 * Create a StopWordFilter for terms normalized by a given TermNormalizer, which normalizes the stop words too
+	 * @param stopWords the stop words
+	 * @param minLength the minimum length of a term that is kept
+	 * @param termNormalizer the normalizer of the concordance the filter is used with
+	 */
+	public StopWordFilter(Collection<String> stopWords, int minLength, TermNormalizer termNormalizer) {
+		this.minLength = minLength;
+
+		//Power-of-two table at most half full
+		int capacity = 2;
+		while (capacity < stopWords.size() * 2) capacity <<= 1;
+		words = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+
+		int count = 0;
+		for (String stopWord : stopWords) {
+			String word = termNormalizer.normalize(stopWord);
+			if (word.isEmpty()) continue;
+
+			int hash = HASH.hash(word);
+			int index = hash & mask;
+			while (words[index] != null && !words[index].equals(word)) index = (index + 1) & mask;
+			if (words[index] == null) {
+				words[index] = word;
+				hashes[index] = hash;
+				count++;
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Load a StopWordFilter for terms normalized by the default TermNormalizer from a UTF-8 text file holding one
+	 * stop word per line. Blank lines and lines starting with # are ignored
+	 * @param file the file of stop words
+	 * @param minLength the minimum length of a term that is kept
+	 * @return the loaded filter
+	 * @throws IOException if the file cannot be read
+	 */
+	public static StopWordFilter load(File file, int minLength) throws IOException {
+		return load(file, minLength, TermNormalizer.DEFAULT);
+	}
+
+	/**
+	 * Load a StopWordFilter for terms normalized by a given TermNormalizer from a UTF-8 text file holding one
+	 * stop word per line. Blank lines and lines starting with # are ignored
+	 * @param file the file of stop words
+	 * @param minLength the minimum length of a term that is kept
+	 * @param termNormalizer the normalizer of the concordance the filter is used with
+	 * @return the loaded filter
+	 * @throws IOException if the file cannot be read
+	 */
+	public static StopWordFilter load(File file, int minLength, TermNormalizer termNormalizer) throws IOException {
+		ArrayList<String> stopWords = new ArrayList<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && line.charAt(0) != '#') stopWords.add(line);
+			}
+		}
+
+		return new StopWordFilter(stopWords, minLength, termNormalizer);
+	}
+
+	/**
+	 * Check whether a normalized term should be left out of the concordance
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @return true if the term is too short or is a stop word
+	 */
+	public boolean rejects(char[] chars, int length) {
+		return length < minLength || isStopWord(chars, length);
+	}
+
+	/**
+	 * Check whether a normalized term is a stop word
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @return true if the term is a stop word
+	 */
+	public boolean isStopWord(char[] chars, int length) {
+		if (size == 0) return false;
+
+		int hash = HASH.hash(chars, 0, length);
+
+		//Probe until the term or an empty slot is found
+		for (int index = hash & mask; words[index] != null; index = (index + 1) & mask) {
+			if (hashes[index] == hash && matches(words[index], chars, length)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the minimum length of a term that is kept
+	 * @return the minimum length
+	 */
+	public int getMinLength() {
+		return minLength;
+	}
+
+	/**
+	 * Get the number of stop words
+	 * @return the number of distinct stop words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check whether a stop word is equal to a term given as characters
+	 * @param word the stop word
+	 * @param chars a buffer holding the term
+	 * @param length the number of characters in the term
+	 * @return true if the two are equal
+	 */
+	private static boolean matches(String word, char[] chars, int length) {
+		if (word.length() != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != chars[i]) return false;
+		}
+		return true;
+	}
+
+}
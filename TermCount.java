@@ -0,0 +1,70 @@
+/**
+ * A term of a frequency report and the number of times it occurred.
+ *
+ * Counts from a concordance are exact. Counts from a SpaceSavingCounter are estimates that may be too high but
+ * never too low, by at most the error the counter reports for the term, so getCount() - getError() is a
+ * guaranteed lower bound.
+ */
+public class TermCount implements Comparable<TermCount> {
+
+	private final String term;
+	private final long count, error;
+
+	/**
+	 * Create a TermCount
+	 * @param term the term
+	 * @param count the number of occurrences, or an upper bound on it
+	 * @param error the most by which count may overstate the true number of occurrences, 0 if it is exact
+	 */
+	public TermCount(String term, long count, long error) {
+		this.term = term;
+		this.count = count;
+		this.error = error;
+	}
+
+	/**
+	 * Get the term
+	 * @return the term
+	 */
+	public String getTerm() {
+		return term;
+	}
+
+	/**
+	 * Get the number of times the term occurred
+	 * @return the count, exact if getError() is 0
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the most by which the count may overstate the number of times the term occurred
+	 * @return the error, 0 for an exact count
+	 */
+	public long getError() {
+		return error;
+	}
+
+	/**
+	 * Order TermCounts as a frequency report lists them: highest count first, and alphabetically among equal counts
+	 * @param other the TermCount to compare with
+	 * @return a negative number if this TermCount comes first, a positive number if it comes second, and 0 if
+	 * the terms and counts are equal
+	 */
+	@Override
+	public int compareTo(TermCount other) {
+		if (count != other.count) return count > other.count ? -1 : 1;
+		return term.compareTo(other.term);
+	}
+
+	/**
+	 * Convert the TermCount to a String
+	 * @return the term and its count, followed by the error if the count is an estimate
+	 */
+	@Override
+	public String toString() {
+		return error == 0 ? term + ": " + count : term + ": " + count + " (error " + error + ")";
+	}
+
+}
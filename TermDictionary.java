@@ -0,0 +1,547 @@
+/**
+ * Interns the terms of a concordance as dense int ids.
+ *
+ * The characters of every term are stored one after another in a single shared char arena, with an int start
+ * offset and an int hash per term, so a term costs its characters plus a few ints rather than a String and its
+ * backing array. Ids are handed out in order of first appearance, starting from 0, so other per-term data can
+ * be kept in plain arrays indexed by id.
+ *
+ * Ids are found through an open-addressing hash table of ids, resolved by linear probing and doubled whenever
+ * it passes the maximum load factor. Growing re-places ids by their stored hashes, so no term is hashed twice.
+ * The table's size is a power of two and a term's home slot is the low bits of its hash, so the hash function
+ * must mix every character into those bits. Terms are hashed by a pluggable TermHashFunction, XXHASH unless
+ * another is given. A String is only created for a term when one is asked for through getTerm.
+ */
+public class TermDictionary {
+
+	//Fraction of the table that may be occupied before it is resized
+	private static final double MAX_LOAD_FACTOR = 0.75;
+
+	//Hash function used when none is given
+	static final TermHashFunction DEFAULT_HASH_FUNCTION = StandardTermHash.XXHASH;
+
+	//Largest power of two an int array can be sized to
+	private static final int MAX_TABLE_SIZE = 1 << 30;
+
+	//Capacity of the arena and the per-term arrays when a dictionary is created
+	private static final int INITIAL_ARENA_CAPACITY = 1 << 10;
+	private static final int INITIAL_TERM_CAPACITY = 1 << 6;
+
+	//Every term's characters, one after another
+	private char[] arena;
+	private int arenaLength;
+
+	//Where each term starts in the arena, with one more entry marking where the next term will start
+	private int[] starts;
+
+	private final TermHashFunction hashFunction;
+
+	//The hash of each term
+	private int[] hashes;
+
+	//Slots of the hash table, each holding a term's id plus one, or 0 if unused
+	private int[] table;
+
+	private int size;
+
+	//Number of times the hash table has grown
+	private int resizeCount;
+
+	/**
+	 * Create an empty TermDictionary that hashes terms with the default hash function
+	 * @param tableSize the smallest number of slots in the hash table, rounded up to a power of two
+	 */
+	public TermDictionary(int tableSize) {
+		this(tableSize, DEFAULT_HASH_FUNCTION);
+	}
+
+	/**
+	 * Create an empty TermDictionary
+	 * @param tableSize the smallest number of slots in the hash table, rounded up to a power of two
+	 * @param hashFunction the function that hashes terms
+	 */
+	public TermDictionary(int tableSize, TermHashFunction hashFunction) {
+		this.hashFunction = hashFunction;
+		table = new int[tableSizeFor(tableSize)];
+		arena = new char[INITIAL_ARENA_CAPACITY];
+		starts = new int[INITIAL_TERM_CAPACITY + 1];
+		hashes = new int[INITIAL_TERM_CAPACITY];
+	}
+
+	/**
+	 * Find the id of a term, adding the term if it is new
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 * @return the id of the term. A new term's id equals the size of the dictionary before it was added
+	 */
+	public int add(char[] chars, int start, int length) {
+		return add(chars, start, length, hashFunction.hash(chars, start, length));
+	}
+
+	/**
+	 * Find the id of a term, adding the term if it is new
+	 * @param term the term
+	 * @return the id of the term
+	 */
+	public int add(String term) {
+		return add(term.toCharArray(), 0, term.length(), hashFunction.hash(term));
+	}
+
+	/**
+	 * Find the id in this dictionary of a term from another dictionary, adding the term if it is new. The term is
+	 * only hashed again if the two dictionaries use different hash functions
+	 * @param other the dictionary holding the term
+	 * @param id the term's id in the other dictionary
+	 * @return the id of the term in this dictionary
+	 */
+	public int add(TermDictionary other, int id) {
+		int start = other.starts[id], length = other.starts[id + 1] - start;
+		int hash = other.hashFunction == hashFunction ? other.hashes[id] : hashFunction.hash(other.arena, start, length);
+		return add(other.arena, start, length, hash);
+	}
+
+	/**
+	 * Find the id of a term, adding the term if it is new
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 * @param hash the term's hash from this dictionary's hash function
+	 * @return the id of the term
+	 */
+	private int add(char[] chars, int start, int length, int hash) {
+		int slot = findSlot(chars, start, length, hash);
+		if (table[slot] != 0) return table[slot] - 1;
+
+		//New term: grow the table first if this add would pass the load factor
+		if (size + 1 > table.length * MAX_LOAD_FACTOR) {
+			resize();
+			slot = findSlot(chars, start, length, hash);
+		}
+
+		//Copy the term into the arena
+		if (size + 1 == starts.length) growTerms();
+		if (arenaLength + length > arena.length) growArena(arenaLength + length);
+		System.arraycopy(chars, start, arena, arenaLength, length);
+		arenaLength += length;
+
+		hashes[size] = hash;
+		starts[size + 1] = arenaLength;
+		table[slot] = size + 1;
+		return size++;
+	}
+
+	/**
+	 * Find the id of a term without adding it
+	 * @param term the term
+	 * @return the id of the term, or -1 if it is not in the dictionary
+	 */
+	public int find(String term) {
+		int hash = hashFunction.hash(term), mask = table.length - 1;
+
+		//Step forward one slot at a time until the term or an unused slot is found
+		for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && compare(id, term) == 0) return id;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the number of terms in the dictionary
+	 * @return the number of terms, which is also the next id to be handed out
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the function that hashes this dictionary's terms
+	 * @return the hash function
+	 */
+	public TermHashFunction getHashFunction() {
+		return hashFunction;
+	}
+
+	/**
+	 * Get the number of slots in the hash table
+	 * @return the size of the hash table, a power of two
+	 */
+	public int getTableSize() {
+		return table.length;
+	}
+
+	/**
+	 * Get the id of the term held in a slot of the hash table
+	 * @param slot the index of the slot
+	 * @return the id of the term, or -1 if the slot is unused
+	 */
+	public int idAt(int slot) {
+		return table[slot] - 1;
+	}
+
+	/**
+	 * Get the number of times the hash table has grown
+	 * @return the number of resizes
+	 */
+	public int getResizeCount() {
+		return resizeCount;
+	}
+
+	/**
+	 * Count how many probes it takes to find each term, by walking the hash table. Safe to call while another
+	 * thread adds terms, though the counts are then approximate
+	 * @param buckets the number of elements in the histogram
+	 * @return a histogram whose element i counts the terms found on probe i + 1. The last element counts every
+	 * term that takes that many probes or more
+	 */
+	public long[] probeLengthHistogram(int buckets) {
+		long[] histogram = new long[buckets];
+		int[] slots = table;
+		int[] termHashes = hashes;
+
+		for (int slot = 0; slot < slots.length; slot++) {
+			int id = slots[slot] - 1;
+			if (id < 0 || id >= termHashes.length) continue;
+
+			//Distance from the term's home slot, allowing for probes that wrapped around the end of the table
+			int home = termHashes[id] & (slots.length - 1);
+			int probes = ((slot - home) & (slots.length - 1)) + 1;
+			histogram[Math.min(probes, buckets) - 1]++;
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Get a term as a String
+	 * @param id the id of the term
+	 * @return a new String holding the term
+	 */
+	public String getTerm(int id) {
+		return new String(arena, starts[id], starts[id + 1] - starts[id]);
+	}
+
+	/**
+	 * Get the number of characters in a term
+	 * @param id the id of the term
+	 * @return the length of the term
+	 */
+	public int getLength(int id) {
+		return starts[id + 1] - starts[id];
+	}
+
+	/**
+	 * Get a character of a term
+	 * @param id the id of the term
+	 * @param index the index of the character within the term
+	 * @return the character
+	 */
+	public char charAt(int id, int index) {
+		return arena[starts[id] + index];
+	}
+
+	/**
+	 * Get the hash of a term, as stored by the dictionary
+	 * @param id the id of the term
+	 * @return the hash from the dictionary's hash function
+	 */
+	public int getHash(int id) {
+		return hashes[id];
+	}
+
+	/**
+	 * Hash a term with a function other than the dictionary's own, without creating a String for it
+	 * @param id the id of the term
+	 * @param function the hash function to apply
+	 * @return the term's hash from that function
+	 */
+	int hash(int id, TermHashFunction function) {
+		return function.hash(arena, starts[id], starts[id + 1] - starts[id]);
+	}
+
+	/**
+	 * Copy the characters of a term into an existing array
+	 * @param id the id of the term
+	 * @param dest the array to fill, which must have room for getLength(id) characters from offset
+	 * @param offset the index of dest at which to start
+	 * @return the number of characters copied
+	 */
+	public int getChars(int id, char[] dest, int offset) {
+		int length = starts[id + 1] - starts[id];
+		System.arraycopy(arena, starts[id], dest, offset, length);
+		return length;
+	}
+
+	/**
+	 * Create a view of the terms of this dictionary as CharSequences, which can be moved from term to term
+	 * without copying or allocating
+	 * @return a new view, positioned at no term until moveTo is called
+	 */
+	TermView newView() {
+		return new TermView();
+	}
+
+	/**
+	 * Get the number of chars held in the arena, which is the combined length of every term
+	 * @return the number of chars in use
+	 */
+	public int getArenaLength() {
+		return arenaLength;
+	}
+
+	/**
+	 * Get the number of bytes taken by the dictionary's arrays, counting their full capacity
+	 * @return the size of the arena, the per-term arrays and the hash table in bytes
+	 */
+	public long getByteSize() {
+		return arena.length * (long) Character.BYTES + (starts.length + hashes.length + table.length) * (long) Integer.BYTES;
+	}
+
+	/**
+	 * Compare two terms in String order
+	 * @param id1 the id of the first term
+	 * @param id2 the id of the second term
+	 * @return a negative number, zero or a positive number as the first term is less than, equal to or greater
+	 * than the second
+	 */
+	public int compare(int id1, int id2) {
+		int start1 = starts[id1], length1 = starts[id1 + 1] - start1;
+		int start2 = starts[id2], length2 = starts[id2 + 1] - start2;
+
+		for (int i = 0; i < length1 && i < length2; i++) {
+			char c1 = arena[start1 + i], c2 = arena[start2 + i];
+			if (c1 != c2) return c1 - c2;
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * Compare a term with a String, in String order
+	 * @param id the id of the term
+	 * @param other the String to compare the term with
+	 * @return a negative number, zero or a positive number as the term is less than, equal to or greater than
+	 * the String
+	 */
+	public int compare(int id, String other) {
+		int start = starts[id], length = starts[id + 1] - start;
+
+		for (int i = 0; i < length && i < other.length(); i++) {
+			char c1 = arena[start + i], c2 = other.charAt(i);
+			if (c1 != c2) return c1 - c2;
+		}
+		return length - other.length();
+	}
+
+	/**
+	 * Check whether a term starts with a prefix
+	 * @param id the id of the term
+	 * @param prefix the prefix
+	 * @return true if the term starts with the prefix
+	 */
+	public boolean startsWith(int id, String prefix) {
+		int start = starts[id];
+		if (starts[id + 1] - start < prefix.length()) return false;
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (arena[start + i] != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the id of every term, sorted into String order by a merge sort over the arena
+	 * @return the sorted ids
+	 */
+	public int[] sortedIds() {
+		int[] ids = new int[size];
+		for (int id = 0; id < size; id++) {
+			ids[id] = id;
+		}
+
+		mergeSort(ids, new int[size], 0, size);
+		return ids;
+	}
+
+	/**
+	 * Sort a range of ids into String order
+	 * @param ids the ids to sort
+	 * @param scratch an array as long as ids, used while merging
+	 * @param from the index of the first id in the range
+	 * @param to the index after the last id in the range
+	 */
+	private void mergeSort(int[] ids, int[] scratch, int from, int to) {
+
+		//Short ranges are insertion sorted
+		if (to - from < 16) {
+			for (int i = from + 1; i < to; i++) {
+				int id = ids[i], j = i;
+				while (j > from && compare(ids[j - 1], id) > 0) {
+					ids[j] = ids[j - 1];
+					j--;
+				}
+				ids[j] = id;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(ids, scratch, from, mid);
+		mergeSort(ids, scratch, mid, to);
+
+		//Already in order: nothing to merge
+		if (compare(ids[mid - 1], ids[mid]) <= 0) return;
+
+		System.arraycopy(ids, from, scratch, from, to - from);
+		int left = from, right = mid;
+		for (int i = from; i < to; i++) {
+			if (right == to || (left < mid && compare(scratch[left], scratch[right]) <= 0)) ids[i] = scratch[left++];
+			else ids[i] = scratch[right++];
+		}
+	}
+
+	/**
+	 * Find the slot of the hash table that holds a term, or the unused slot where the term would be placed
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 * @param hash the hash of the term
+	 * @return the index of the matching or unused slot
+	 */
+	private int findSlot(char[] chars, int start, int length, int hash) {
+		int mask = table.length - 1, slot = hash & mask;
+
+		//Step forward one slot at a time until the term or an unused slot is found
+		while (table[slot] != 0 && !matches(table[slot] - 1, chars, start, length, hash)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Check whether a stored term is equal to a term given as characters
+	 * @param id the id of the stored term
+	 * @param chars a buffer holding the term to compare
+	 * @param start the index of the first character to compare
+	 * @param length the number of characters in the term to compare
+	 * @param hash the hash of the term to compare
+	 * @return true if the two terms are equal
+	 */
+	private boolean matches(int id, char[] chars, int start, int length, int hash) {
+		int termStart = starts[id];
+		if (hashes[id] != hash || starts[id + 1] - termStart != length) return false;
+
+		for (int i = 0; i < length; i++) {
+			if (arena[termStart + i] != chars[start + i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Double the hash table and re-place every id by its stored hash
+	 * @throws IllegalStateException if the table is already as large as an array can be
+	 */
+	private void resize() {
+		if (table.length == MAX_TABLE_SIZE) throw new IllegalStateException("Term dictionary hash table is full");
+		int[] larger = new int[table.length * 2];
+		int mask = larger.length - 1;
+
+		//Ids are unique, so only an unused slot needs to be found for each
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (larger[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			larger[slot] = id + 1;
+		}
+
+		table = larger;
+		resizeCount++;
+	}
+
+	/**
+	 * Double the capacity of the per-term arrays
+	 */
+	private void growTerms() {
+		int[] largerStarts = new int[(starts.length - 1) * 2 + 1];
+		System.arraycopy(starts, 0, largerStarts, 0, size + 1);
+		starts = largerStarts;
+
+		int[] largerHashes = new int[hashes.length * 2];
+		System.arraycopy(hashes, 0, largerHashes, 0, size);
+		hashes = largerHashes;
+	}
+
+	/**
+	 * Grow the arena, at least doubling its capacity
+	 * @param capacity the smallest capacity needed
+	 * @throws IllegalStateException if the terms no longer fit in a single array
+	 */
+	private void growArena(int capacity) {
+		if (capacity < 0) throw new IllegalStateException("Term dictionary arena is full");
+
+		char[] larger = new char[(int) Math.min(Math.max(capacity, arena.length * 2L), Integer.MAX_VALUE - 8)];
+		System.arraycopy(arena, 0, larger, 0, arenaLength);
+		arena = larger;
+	}
+
+	/**
+	 * Find the power of two table size for a requested number of slots
+	 * @param slots the smallest number of slots wanted
+	 * @return the smallest power of two that is at least slots, from 1 up to 2^30
+	 */
+	static int tableSizeFor(int slots) {
+		if (slots >= MAX_TABLE_SIZE) return MAX_TABLE_SIZE;
+		return slots <= 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+	}
+
+
+	/**
+	 * A reusable CharSequence over one term of the dictionary at a time. It reads the arena directly, so it is
+	 * only valid while no term is being added, and it changes whenever it is moved to another term
+	 */
+	final class TermView implements CharSequence {
+
+		private int start, length;
+
+		/**
+		 * Point the view at a term
+		 * @param id the id of the term
+		 * @return this view
+		 */
+		TermView moveTo(int id) {
+			start = starts[id];
+			length = starts[id + 1] - start;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index " + index + " of term of length " + length);
+			}
+			return arena[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			if (from < 0 || to > length || from > to) {
+				throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of term of length " + length);
+			}
+			return new String(arena, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(arena, start, length);
+		}
+	}
+
+}
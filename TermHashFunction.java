@@ -0,0 +1,34 @@
+/**
+ * A hash function for the terms of a concordance. Implementations must give a term the same hash whether it is
+ * passed as characters or as a CharSequence.
+ *
+ * Hash tables built on a TermHashFunction are sized in powers of two and take a term's slot from the low bits of
+ * its hash, so every bit of the result should depend on every character of the term. StandardTermHash provides
+ * ready-made functions, and HashQualityReport compares how evenly functions spread a given corpus.
+ */
+public interface TermHashFunction {
+
+	/**
+	 * Hash a term given as a range of characters
+	 * @param chars a buffer holding the term
+	 * @param start the index of the term's first character
+	 * @param length the number of characters in the term
+	 * @return the hash
+	 */
+	public int hash(char[] chars, int start, int length);
+
+	/**
+	 * Hash a term given as a CharSequence. The default copies the term into an array; StandardTermHash reads it
+	 * in place
+	 * @param term the term
+	 * @return the hash, equal to the hash of the same characters given as an array
+	 */
+	public default int hash(CharSequence term) {
+		char[] chars = new char[term.length()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = term.charAt(i);
+		}
+		return hash(chars, 0, chars.length);
+	}
+
+}
@@ -0,0 +1,169 @@
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Turns a word into the form a concordance stores: punctuation other than apostrophes is removed and the word is
+ * lower-cased. Shared by ConcordanceTokenizer, which normalizes the text added to a concordance, and by the
+ * lookups and ConcordanceDataElement, so every word is normalized once and the same way.
+ *
+ * ASCII characters are filtered and lower-cased together by a single table lookup, so an ASCII word is
+ * normalized in one pass without any String being made. Only a word holding other characters falls back to
+ * Character.isLetterOrDigit and String.toLowerCase, in the root locale so the result does not depend on where
+ * the program runs. The composing normalizer also brings such words into Unicode Normalization Form C first, so
+ * an accented letter typed as a base letter and a combining mark matches the same precomposed letter.
+ *
+ * A normalizer is immutable and can be shared between threads and structures.
+ */
+public class TermNormalizer {
+
+	/**
+	 * The default normalizer: Unicode text is lower-cased as it is, without composing it
+	 */
+	public static final TermNormalizer DEFAULT = new TermNormalizer(false);
+
+	/**
+	 * A normalizer that also brings non-ASCII words into Normalization Form C before lower-casing them
+	 */
+	public static final TermNormalizer NFC = new TermNormalizer(true);
+
+	//The lower-cased form of each ASCII character kept within a word, or 0 for characters that are stripped
+	private static final char[] ASCII_FOLD = new char[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) ASCII_FOLD[c] = c;
+		for (char c = 'A'; c <= 'Z'; c++) ASCII_FOLD[c] = (char) (c + ('a' - 'A'));
+		for (char c = '0'; c <= '9'; c++) ASCII_FOLD[c] = c;
+		ASCII_FOLD['\''] = '\'';
+	}
+
+	private final boolean composing;
+
+	/**
+	 * Create a TermNormalizer
+	 * @param composing whether non-ASCII words are brought into Normalization Form C
+	 */
+	private TermNormalizer(boolean composing) {
+		this.composing = composing;
+	}
+
+	/**
+	 * Check whether this normalizer brings non-ASCII words into Normalization Form C
+	 * @return true for the composing normalizer
+	 */
+	public boolean isComposing() {
+		return composing;
+	}
+
+	/**
+	 * Filter and lower-case an ASCII character
+	 * @param c a character below 128
+	 * @return the lower-cased character, or 0 if the character is stripped
+	 */
+	static char foldAscii(char c) {
+		return ASCII_FOLD[c];
+	}
+
+	/**
+	 * Check whether a non-ASCII character is kept within a word until the word is finished. Letters and digits
+	 * are kept. The composing normalizer also keeps combining marks, which are only removed after composition
+	 * @param c a character of 128 or above
+	 * @return true if the character is kept
+	 */
+	boolean keepsNonAscii(char c) {
+		if (Character.isLetterOrDigit(c)) return true;
+		if (!composing) return false;
+
+		int type = Character.getType(c);
+		return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+				|| type == Character.ENCLOSING_MARK;
+	}
+
+	/**
+	 * Finish a word holding non-ASCII characters, whose characters have already been filtered by foldAscii and
+	 * keepsNonAscii. The word is composed if this normalizer composes, and lower-cased
+	 * @param chars a buffer holding the word
+	 * @param length the number of characters in the word
+	 * @return the normalized word, which may be shorter or longer than the input
+	 */
+	String foldNonAscii(char[] chars, int length) {
+		String word = new String(chars, 0, length);
+		if (!composing) return word.toLowerCase(Locale.ROOT);
+
+		//Combining marks that did not compose, and any that lower-casing introduces, are stripped at the end
+		String lower = Normalizer.normalize(word, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+		StringBuilder kept = new StringBuilder(lower.length());
+		for (int i = 0; i < lower.length(); i++) {
+			char c = lower.charAt(i);
+			if (c < 128 ? ASCII_FOLD[c] != 0 : Character.isLetterOrDigit(c)) kept.append(c);
+		}
+		return kept.toString();
+	}
+
+	/**
+	 * Normalize a single word the way ConcordanceTokenizer normalizes the words of text, without applying any
+	 * stop word filter. Spaces and line terminators are stripped like any other punctuation
+	 * @param term the word to normalize
+	 * @return the word with punctuation other than apostrophes removed, lower-cased. Empty if nothing is kept.
+	 * An ASCII word that is already normalized is returned without being copied when it is a String
+	 */
+	public String normalize(CharSequence term) {
+		int length = term.length();
+
+		//Scan the leading run of characters that are already in normalized form
+		int i = 0;
+		while (i < length) {
+			char c = term.charAt(i);
+			if (c >= 128 || ASCII_FOLD[c] != c || c == 0) break;
+			i++;
+		}
+		if (i == length) return term.toString();
+
+		//Filter and fold the rest, falling back to Unicode handling if a kept character is not ASCII
+		char[] chars = new char[length];
+		for (int j = 0; j < i; j++) {
+			chars[j] = term.charAt(j);
+		}
+		int kept = i;
+		boolean ascii = true;
+		for (; i < length; i++) {
+			char c = term.charAt(i);
+			if (c < 128) {
+				c = ASCII_FOLD[c];
+				if (c == 0) continue;
+			}
+			else if (keepsNonAscii(c)) ascii = false;
+			else continue;
+			chars[kept++] = c;
+		}
+
+		return ascii ? new String(chars, 0, kept) : foldNonAscii(chars, kept);
+	}
+
+	/**
+	 * Lower-case a word that has already had its punctuation removed, as ConcordanceDataElement does with the
+	 * words it is given. An ASCII word is folded by table, and a word that is already lower-case is returned as
+	 * it is. Other words are lower-cased in the root locale
+	 * @param word the word to lower-case
+	 * @return the lower-cased word
+	 */
+	public static String lowerCase(String word) {
+		int length = word.length();
+		int i = 0;
+		while (i < length) {
+			char c = word.charAt(i);
+			if (c >= 128) return word.toLowerCase(Locale.ROOT);
+			if (c >= 'A' && c <= 'Z') break;
+			i++;
+		}
+		if (i == length) return word;
+
+		char[] chars = word.toCharArray();
+		for (; i < length; i++) {
+			char c = chars[i];
+			if (c >= 128) return word.toLowerCase(Locale.ROOT);
+			if (c >= 'A' && c <= 'Z') chars[i] = (char) (c + ('a' - 'A'));
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+
+import concordance.benchmark.ConcordanceOperations;
+
+/**
+ * The concordance operations measured by concordance.benchmark.ConcordanceBenchmark, which loads this class by
+ * name since it cannot refer to the default package
+ */
+public class DefaultConcordanceOperations implements ConcordanceOperations {
+
+	//Starting estimate for each new CDS, as ConcordanceDataManager uses
+	private static final int INITIAL_WORD_ESTIMATE = 1024;
+
+	private final ConcordanceDataManager manager = new ConcordanceDataManager();
+
+	//The structure showAll lists
+	private ConcordanceDataStructure built;
+
+	@Override
+	public long build(String[][] corpus) {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(INITIAL_WORD_ESTIMATE);
+		for (int line = 0; line < corpus.length; line++) {
+			for (String word : corpus[line]) {
+				cds.add(word, line + 1);
+			}
+		}
+		return cds.getTableSize();
+	}
+
+	@Override
+	public long tokenize(String text) {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(INITIAL_WORD_ESTIMATE);
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds);
+		tokenizer.tokenize(text, 0, text.length());
+		tokenizer.finish();
+		return cds.getTermCount();
+	}
+
+	@Override
+	public long ingest(File input) throws IOException {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(INITIAL_WORD_ESTIMATE);
+		new MappedFileIngester().ingest(input, cds);
+		return cds.getTermCount();
+	}
+
+	@Override
+	public void load(String[][] corpus) {
+		built = new ConcordanceDataStructure(INITIAL_WORD_ESTIMATE);
+		for (int line = 0; line < corpus.length; line++) {
+			for (String word : corpus[line]) {
+				built.add(word, line + 1);
+			}
+		}
+	}
+
+	@Override
+	public long showAll() {
+		return built.showAll().size();
+	}
+
+	@Override
+	public long createConcordanceArray(String text) {
+		return manager.createConcordanceArray(text).size();
+	}
+
+	@Override
+	public long createConcordanceFile(File input, File output) throws IOException {
+		if (!manager.createConcordanceFile(input, output)) throw new IOException("The concordance was not written");
+		return output.length();
+	}
+
+	@Override
+	public long sortedDoubleLinkedListAdd(String[] items) {
+		SortedDoubleLinkedList<String> list = new SortedDoubleLinkedList<String>(Comparator.naturalOrder());
+		for (String item : items) {
+			list.add(item);
+		}
+		return list.getSize();
+	}
+
+	@Override
+	public long sortedSkipListAdd(String[] items) {
+		SortedSkipList<String> list = new SortedSkipList<String>(Comparator.naturalOrder());
+		for (String item : items) {
+			list.add(item);
+		}
+		return list.getSize();
+	}
+
+}
@@ -0,0 +1,149 @@
+package concordance.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the concordance pipeline over a synthetic corpus whose word frequencies follow a Zipf
+ * distribution. Build and run them from the benchmark directory with:
+ * <pre>
+ * mvn -B package
+ * java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ * The GC profiler adds the allocation rate (gc.alloc.rate) and bytes allocated per operation
+ * (gc.alloc.rate.norm) to the throughput of each benchmark. The corpus is set with JMH parameters, for example
+ * {@code -p lines=100000 -p vocabulary=200000 -p zipf=1.2}, and a regular expression selects benchmarks, for
+ * example {@code java -jar target/benchmarks.jar showAll -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcordanceBenchmark {
+
+	//The default-package implementation of the operations, which cannot be named in this package
+	private static final String OPERATIONS_CLASS = "DefaultConcordanceOperations";
+
+	//Number of lines in the corpus
+	@Param("20000")
+	public int lines;
+
+	//Average number of words per line
+	@Param("12")
+	public int wordsPerLine;
+
+	//Number of distinct words the corpus draws from
+	@Param("50000")
+	public int vocabulary;
+
+	//Exponent of the Zipf distribution
+	@Param("1.0")
+	public double zipf;
+
+	//Number of items added by each sorted list benchmark
+	@Param("2000")
+	public int listSize;
+
+	//Random seed for the corpus
+	@Param("42")
+	public long seed;
+
+	private ConcordanceOperations operations;
+	private String[][] corpus;
+	private String text;
+	private String[] items;
+	private File input, output;
+
+	/**
+	 * Generate the corpus, as words, text and a file, and build the structure showAll lists
+	 * @throws Exception if the operations cannot be loaded or the corpus file cannot be written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		operations = (ConcordanceOperations) Class.forName(OPERATIONS_CLASS).getDeclaredConstructor().newInstance();
+
+		corpus = ZipfCorpus.generate(lines, wordsPerLine, vocabulary, zipf, new Random(seed));
+		text = ZipfCorpus.toText(corpus);
+		input = File.createTempFile("concordance-bench", ".txt");
+		output = File.createTempFile("concordance-bench", ".out");
+		Files.write(input.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		operations.load(corpus);
+
+		//Sorted list inserts are benchmarked on their own, smaller set of words
+		items = new String[listSize];
+		Random random = new Random(seed);
+		for (int i = 0; i < listSize; i++) {
+			items[i] = ZipfCorpus.word(random.nextInt(vocabulary));
+		}
+	}
+
+	/**
+	 * Delete the corpus and concordance files
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		input.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public long build() {
+		return operations.build(corpus);
+	}
+
+	@Benchmark
+	public long tokenize() {
+		return operations.tokenize(text);
+	}
+
+	@Benchmark
+	public long ingest() throws IOException {
+		return operations.ingest(input);
+	}
+
+	@Benchmark
+	public long showAll() {
+		return operations.showAll();
+	}
+
+	@Benchmark
+	public long createConcordanceArray() {
+		return operations.createConcordanceArray(text);
+	}
+
+	@Benchmark
+	public long createConcordanceFile() throws IOException {
+		return operations.createConcordanceFile(input, output);
+	}
+
+	@Benchmark
+	public long sortedDoubleLinkedListAdd() {
+		return operations.sortedDoubleLinkedListAdd(items);
+	}
+
+	@Benchmark
+	public long sortedSkipListAdd() {
+		return operations.sortedSkipListAdd(items);
+	}
+
+}
@@ -0,0 +1,80 @@
+package concordance.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The concordance operations that ConcordanceBenchmark measures.
+ *
+ * JMH only runs benchmarks in a named package, and a class in a named package cannot refer to classes in the
+ * default package, where the concordance lives. The benchmarks therefore call the concordance through this
+ * interface, which the default-package class DefaultConcordanceOperations implements. Each method returns a value
+ * derived from its result, so the work cannot be optimized away.
+ */
+public interface ConcordanceOperations {
+
+	/**
+	 * Add every word of a corpus to a new ConcordanceDataStructure with ConcordanceDataStructure.add
+	 * @param corpus the words of each line
+	 * @return the size of the structure's hash table
+	 */
+	long build(String[][] corpus);
+
+	/**
+	 * Tokenize text into a new ConcordanceDataStructure with a ConcordanceTokenizer
+	 * @param text the text
+	 * @return the number of terms in the structure
+	 */
+	long tokenize(String text);
+
+	/**
+	 * Memory-map a file and tokenize its bytes into a new ConcordanceDataStructure with a MappedFileIngester
+	 * @param input the file, in UTF-8
+	 * @return the number of terms in the structure
+	 * @throws IOException if the file cannot be read
+	 */
+	long ingest(File input) throws IOException;
+
+	/**
+	 * Build the ConcordanceDataStructure that showAll lists
+	 * @param corpus the words of each line
+	 */
+	void load(String[][] corpus);
+
+	/**
+	 * List the structure built by load with ConcordanceDataStructure.showAll
+	 * @return the number of lines listed
+	 */
+	long showAll();
+
+	/**
+	 * Create a concordance of text with ConcordanceDataManager.createConcordanceArray
+	 * @param text the text
+	 * @return the number of lines of the concordance
+	 */
+	long createConcordanceArray(String text);
+
+	/**
+	 * Create a concordance of a file with ConcordanceDataManager.createConcordanceFile
+	 * @param input the file to read
+	 * @param output the file to write
+	 * @return the length of the output file
+	 * @throws IOException if a file cannot be read or written
+	 */
+	long createConcordanceFile(File input, File output) throws IOException;
+
+	/**
+	 * Add items one at a time to a new SortedDoubleLinkedList
+	 * @param items the items
+	 * @return the size of the list
+	 */
+	long sortedDoubleLinkedListAdd(String[] items);
+
+	/**
+	 * Add items one at a time to a new SortedSkipList
+	 * @param items the items
+	 * @return the size of the list
+	 */
+	long sortedSkipListAdd(String[] items);
+
+}
@@ -0,0 +1,105 @@
+package concordance.benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic corpora whose word frequencies follow a Zipf distribution, as natural text roughly does
+ */
+public final class ZipfCorpus {
+
+	/**
+	 * Not instantiated
+	 */
+	private ZipfCorpus() {
+	}
+
+	/**
+	 * Generate a corpus of words drawn from a Zipf distribution. Some words are capitalized or carry punctuation,
+	 * so the tokenizer's clean-up and case folding are exercised too
+	 * @param lines the number of lines
+	 * @param wordsPerLine the average number of words per line
+	 * @param vocabulary the number of distinct words
+	 * @param exponent the Zipf exponent
+	 * @param random the source of randomness
+	 * @return the words of each line
+	 */
+	public static String[][] generate(int lines, int wordsPerLine, int vocabulary, double exponent, Random random) {
+		//Cumulative distribution over word ranks
+		double[] cumulative = new double[vocabulary];
+		double total = 0;
+		for (int rank = 0; rank < vocabulary; rank++) {
+			total += 1 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = total;
+		}
+
+		String[] words = new String[vocabulary];
+		for (int rank = 0; rank < vocabulary; rank++) {
+			words[rank] = word(rank);
+		}
+
+		String[][] corpus = new String[lines][];
+		for (int line = 0; line < lines; line++) {
+			String[] tokens = new String[random.nextInt(wordsPerLine * 2 + 1)];
+			for (int i = 0; i < tokens.length; i++) {
+				int rank = search(cumulative, random.nextDouble() * total);
+				String word = words[rank];
+				int decoration = random.nextInt(20);
+				if (decoration == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+				else if (decoration == 1) word = word + ",";
+				else if (decoration == 2) word = word + ".";
+				tokens[i] = word;
+			}
+			corpus[line] = tokens;
+		}
+		return corpus;
+	}
+
+	/**
+	 * Make a pronounceable word for a rank, so that frequent words are short
+	 * @param rank the rank of the word
+	 * @return the word
+	 */
+	public static String word(int rank) {
+		final String consonants = "bcdfghklmnprstvwz", vowels = "aeiou";
+		StringBuilder builder = new StringBuilder();
+		int value = rank + 1;
+		do {
+			builder.append(consonants.charAt(value % consonants.length()));
+			value /= consonants.length();
+			builder.append(vowels.charAt(value % vowels.length()));
+			value /= vowels.length();
+		} while (value > 0);
+		if (builder.length() < 3) builder.append('n');
+		return builder.toString();
+	}
+
+	/**
+	 * Join the lines of a corpus into text
+	 * @param corpus the words of each line
+	 * @return the text, one line per corpus line
+	 */
+	public static String toText(String[][] corpus) {
+		StringBuilder builder = new StringBuilder();
+		for (String[] tokens : corpus) {
+			builder.append(String.join(" ", tokens)).append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Find the first rank whose cumulative weight reaches a value
+	 * @param cumulative the cumulative weights
+	 * @param value the value to search for
+	 * @return the rank
+	 */
+	private static int search(double[] cumulative, double value) {
+		int low = 0, high = cumulative.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] < value) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+}
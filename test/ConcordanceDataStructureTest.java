@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the phrase and near queries of a ConcordanceDataStructure that records positions
+ */
+public class ConcordanceDataStructureTest {
+
+	private static final String TEXT =
+			"The end of the line is near\n"
+			+ "line end of the\n"
+			+ "End, line.\n"
+			+ "at the end of every line we stop at the end of the line\n"
+			+ "the end of\n"
+			+ "the line\n";
+
+	@Test
+	public void phraseFindsWordsInPlace() {
+		ConcordanceDataStructure cds = positional(TEXT);
+
+		//"of" and "the" are not indexed, but still stand between "end" and "line"
+		assertArrayEquals(new int[] {1, 4}, cds.phrase("end of the line"));
+		assertArrayEquals(new int[] {1, 4}, cds.phrase("END of THE line!"));
+		assertArrayEquals(new int[] {1, 4}, cds.phrase("end to be line"));
+		assertArrayEquals(new int[] {1, 2, 3, 4, 5}, cds.phrase("end"));
+		assertArrayEquals(new int[] {3}, cds.phrase("end line"));
+		assertArrayEquals(new int[] {2}, cds.phrase("line end"));
+		assertArrayEquals(new int[] {4}, cds.phrase("every line"));
+	}
+
+	@Test
+	public void phraseDoesNotCrossLines() {
+		ConcordanceDataStructure cds = positional(TEXT);
+		assertArrayEquals(new int[0], cds.phrase("end of the line is near line"));
+		assertArrayEquals(new int[0], cds.phrase("near line"));
+		assertArrayEquals(new int[0], cds.phrase("missing"));
+		assertArrayEquals(new int[0], cds.phrase("end missing"));
+		assertArrayEquals(new int[0], cds.phrase("of the"));
+	}
+
+	@Test
+	public void nearFindsWordsWithinADistance() {
+		ConcordanceDataStructure cds = positional(TEXT);
+		assertArrayEquals(new int[] {2, 3}, cds.near("end", "line", 1));
+		assertArrayEquals(new int[] {2, 3}, cds.near("line", "end", 1));
+		assertArrayEquals(new int[] {1, 2, 3, 4}, cds.near("end", "line", 3));
+		assertArrayEquals(new int[] {1}, cds.near("near", "line", 2));
+		assertArrayEquals(new int[0], cds.near("near", "line", 1));
+		assertArrayEquals(new int[0], cds.near("line", "line", 7));
+		assertArrayEquals(new int[] {4}, cds.near("line", "line", 8));
+		assertArrayEquals(new int[0], cds.near("end", "missing", 10));
+	}
+
+	@Test
+	public void queriesNeedPositions() {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(16);
+		cds.add("word", 1);
+		assertFalse(cds.isPositional());
+		assertThrows(IllegalStateException.class, () -> cds.phrase("word"));
+		assertThrows(IllegalStateException.class, () -> cds.near("word", "word", 1));
+		assertThrows(IllegalStateException.class, () -> cds.setPositional(true));
+		assertThrows(IllegalArgumentException.class, () -> positional(TEXT).near("end", "line", 0));
+	}
+
+	@Test
+	public void positionsDoNotChangeTheConcordance() {
+		ConcordanceDataStructure plain = new ConcordanceDataStructure(16);
+		ExternalConcordanceBuilderTest.tokenize(TEXT, plain);
+		assertEquals(plain.showAll(), positional(TEXT).showAll());
+	}
+
+	/**
+	 * Build a structure that records positions
+	 * @param text the text to add, numbering lines from 1
+	 * @return the structure
+	 */
+	private static ConcordanceDataStructure positional(String text) {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(16);
+		cds.setPositional(true);
+		ExternalConcordanceBuilderTest.tokenize(text, cds);
+		return cds;
+	}
+
+}
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests writing, appending to, reloading and compacting concordance index files, checked against a concordance
+ * built in memory from the same text
+ */
+public class ConcordanceIndexFileTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void reloadedIndexMatchesTheText() throws IOException {
+		String text = text(new Random(12), 400);
+		File input = write("input.txt", text);
+		File index = new File(directory, "input.idx");
+		ConcordanceDataManager manager = new ConcordanceDataManager();
+
+		assertEquals(400, manager.createConcordanceIndex(input, index));
+		ConcordanceDataStructure loaded = manager.loadConcordanceIndex(index);
+		ConcordanceDataStructure built = build(text);
+
+		assertEquals(manager.createConcordanceArray(text), loaded.showAll());
+		assertEquals(built.topTerms(20).toString(), loaded.topTerms(20).toString());
+		assertFalse(new File(directory, "input.idx.tmp").exists());
+	}
+
+	@Test
+	public void appendedLinesAreIndexed() throws IOException {
+		Random random = new Random(13);
+		String first = text(random, 300), second = text(random, 200), third = text(random, 50);
+		File input = write("input.txt", first);
+		File index = new File(directory, "input.idx");
+		ConcordanceDataManager manager = new ConcordanceDataManager();
+		manager.createConcordanceIndex(input, index);
+
+		//A final line without a terminator is left for the next append
+		String unfinished = "unfinished business";
+		Files.write(input.toPath(), (second + unfinished).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		assertEquals(200, manager.appendToConcordanceIndex(input, index));
+		assertEquals(0, manager.loadConcordanceIndex(index).lookup("unfinished").length);
+
+		Files.write(input.toPath(), ("\n" + third).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		assertEquals(51, manager.appendToConcordanceIndex(input, index));
+		assertEquals(0, manager.appendToConcordanceIndex(input, index));
+
+		String all = first + second + unfinished + "\n" + third;
+		ConcordanceIndexFile indexFile = new ConcordanceIndexFile(index);
+		ArrayList<ConcordanceIndexFile.Segment> segments = indexFile.getSegments();
+		assertEquals(3, segments.size());
+		assertEquals(1, segments.get(0).getFirstLine());
+		assertEquals(551, segments.get(2).getLastLine());
+		assertEquals(all.getBytes(StandardCharsets.UTF_8).length, segments.get(2).getInputOffset());
+
+		ConcordanceDataStructure built = build(all);
+		ArrayList<String> expected = built.showAll();
+		assertEquals(expected, manager.loadConcordanceIndex(index).showAll());
+		assertEquals(built.topTerms(20).toString(), manager.loadConcordanceIndex(index).topTerms(20).toString());
+
+		//Every segment can be read in place, and compacting leaves the same concordance in one segment
+		ConcordanceIndexReader reader = new ConcordanceIndexReader(index);
+		assertEquals(3, reader.getSegmentCount());
+		for (String word : new String[] {"unfinished", "business", "hello", "don't", "missing"}) {
+			assertArrayEquals(built.lookup(word), reader.getLines(word), word);
+		}
+
+		manager.compactConcordanceIndex(index);
+		assertEquals(1, indexFile.getSegments().size());
+		assertEquals(551, indexFile.getLastSegment().getLastLine());
+		assertEquals(expected, manager.loadConcordanceIndex(index).showAll());
+		assertEquals(built.topTerms(20).toString(), manager.loadConcordanceIndex(index).topTerms(20).toString());
+	}
+
+	@Test
+	public void theNormalizerIsKeptInTheHeader() throws IOException {
+		File input = write("input.txt", "Cafe\u0301 caf\u00e9\n");
+		File index = new File(directory, "input.idx");
+		ConcordanceDataManager manager = new ConcordanceDataManager();
+		manager.setTermNormalizer(TermNormalizer.NFC);
+		manager.createConcordanceIndex(input, index);
+
+		assertSame(TermNormalizer.NFC, new ConcordanceIndexFile(index).getTermNormalizer());
+		ConcordanceDataStructure loaded = new ConcordanceDataManager().loadConcordanceIndex(index);
+		assertSame(TermNormalizer.NFC, loaded.getTermNormalizer());
+		assertEquals("caf\u00e9: 1\n", String.join("", loaded.showAll()));
+	}
+
+	@Test
+	public void anInvalidFileIsRejected() throws IOException {
+		File index = write("input.idx", "not an index\n");
+		assertThrows(IOException.class, () -> new ConcordanceDataManager().loadConcordanceIndex(index));
+	}
+
+	/**
+	 * Build a concordance in memory, the way the manager does
+	 * @param text the text
+	 * @return the structure holding the text's words
+	 */
+	static ConcordanceDataStructure build(String text) {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(1000);
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(cds);
+		tokenizer.tokenize(text, 0, text.length());
+		tokenizer.finish();
+		return cds;
+	}
+
+	/**
+	 * Make lines of text from a small vocabulary with punctuation, capitals, apostrophes and repeats
+	 * @param random the source of the words
+	 * @param lines the number of lines, each ended by a newline
+	 * @return the text
+	 */
+	static String text(Random random, int lines) {
+		String[] words = {"hello", "Hello,", "world", "don't", "dont", "the", "and", "of", "it's", "rain.",
+				"\"quoted\"", "x", "caf\u00e9", "end-of-line", "a", "zebra", "concordance", "line's", "HELLO"};
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < lines; line++) {
+			for (int i = random.nextInt(12); i > 0; i--) {
+				text.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			text.append("w").append(random.nextInt(lines)).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Write a file in the test directory as UTF-8
+	 * @param name the name of the file
+	 * @param text the contents
+	 * @return the file
+	 */
+	private File write(String name, String text) throws IOException {
+		File file = new File(directory, name);
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+}
@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that ConcordanceOrder lists words in the order the concordance used before sort keys: its lines compared
+ * as text with every apostrophe removed
+ */
+public class ConcordanceOrderTest {
+
+	//The comparator showAll used to sort its formatted lines with
+	private static final Comparator<String> STRIPPED_LINE_ORDER =
+			(s1, s2) -> s1.replaceAll("'", "").compareTo(s2.replaceAll("'", ""));
+
+	@Test
+	public void keysEndWithAColon() {
+		assertTrue(ConcordanceOrder.compareKeys("ab0", "ab") < 0);
+		assertTrue(ConcordanceOrder.compareKeys("ab", "ab0") > 0);
+		assertTrue(ConcordanceOrder.compareKeys("ab", "abc") < 0);
+		assertTrue(ConcordanceOrder.compareKeys("ab", "ab") == 0);
+		assertEquals("dont", ConcordanceOrder.sortKey("d'on't"));
+	}
+
+	@Test
+	public void entriesFollowTheStrippedLineOrder() {
+		Random random = new Random(7);
+		ArrayList<ConcordanceOrder.Entry> entries = new ArrayList<>();
+		HashSet<String> words = new HashSet<>();
+		while (entries.size() < 2000) {
+			String word = randomWord(random);
+			if (!words.add(word)) continue;
+
+			PostingsList postings = new PostingsList();
+			int lines = 1 + random.nextInt(3);
+			for (int i = 0; i < lines; i++) {
+				postings.add(1 + random.nextInt(12));
+			}
+			entries.add(new ConcordanceOrder.Entry(word, postings));
+		}
+
+		entries.sort(ConcordanceOrder.ENTRY_ORDER);
+
+		//The old comparator only ties lines that differ by apostrophes, so the sorted lines must never descend
+		String previous = null;
+		for (ConcordanceOrder.Entry entry : entries) {
+			String line = line(entry);
+			if (previous != null) assertTrue(STRIPPED_LINE_ORDER.compare(previous, line) <= 0, previous + line);
+			previous = line;
+		}
+	}
+
+	@Test
+	public void showAllMatchesTheOldSort() {
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(16);
+		String[] words = {"don't", "dont", "dont'", "abc", "abcd", "o'clock", "oclock", "can't", "cant", "ca'nt",
+				"cants"};
+		for (int i = 0; i < words.length; i++) {
+			cds.add(words[i], 1 + i % 4);
+			cds.add(words[(i * 5) % words.length], 2 + i % 3);
+		}
+
+		ArrayList<String> lines = cds.showAll();
+		SortedDoubleLinkedList<String> oldSort = new SortedDoubleLinkedList<>(STRIPPED_LINE_ORDER);
+		for (String line : lines) {
+			oldSort.add(line);
+		}
+
+		ArrayList<String> expected = oldSort.toArrayList();
+		assertEquals(cds.getTermCount(), lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals(0, STRIPPED_LINE_ORDER.compare(expected.get(i), lines.get(i)), expected.get(i) + lines.get(i));
+		}
+	}
+
+	/**
+	 * Make a short word from a few characters that sort either side of ':', with apostrophes
+	 * @param random the source of the characters
+	 * @return the word
+	 */
+	private static String randomWord(Random random) {
+		String alphabet = "ab0'";
+		StringBuilder word = new StringBuilder();
+		int length = 1 + random.nextInt(6);
+		for (int i = 0; i < length; i++) {
+			word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return word.toString();
+	}
+
+	/**
+	 * Format an Entry the way showAll does
+	 * @param entry the Entry
+	 * @return the word, its lines, and a newline
+	 */
+	private static String line(ConcordanceOrder.Entry entry) {
+		StringBuilder line = new StringBuilder(entry.getWord()).append(": ");
+		entry.getPostings().appendTo(line);
+		return line.append('\n').toString();
+	}
+
+}
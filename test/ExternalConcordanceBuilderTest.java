@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a concordance built within a heap budget, through spilled runs, is identical to one built in memory
+ */
+public class ExternalConcordanceBuilderTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void spilledBuildMatchesTheInMemoryBuild() throws IOException {
+		String text = ConcordanceIndexFileTest.text(new Random(20), 8000);
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(1000);
+		ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+		try (ExternalConcordanceBuilder builder = new ExternalConcordanceBuilder(cds, 1 << 14, directory)) {
+			tokenize(text, builder);
+			assertTrue(builder.getRunCount() > 1);
+			try (ConcordanceWriter writer = new ConcordanceWriter(spilled, StandardCharsets.UTF_8)) {
+				builder.writeAll(writer);
+			}
+		}
+
+		assertEquals(inMemory(text), spilled.toString("UTF-8"));
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	public void oldestRunsAreMergedPastTheLimit() throws IOException {
+		String text = ConcordanceIndexFileTest.text(new Random(21), 60000);
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(1000);
+		ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+		try (ExternalConcordanceBuilder builder = new ExternalConcordanceBuilder(cds, 1, directory)) {
+			tokenize(text, builder);
+			assertTrue(builder.getRunCount() <= ExternalConcordanceBuilder.MAX_RUNS);
+			try (ConcordanceWriter writer = new ConcordanceWriter(spilled, StandardCharsets.UTF_8)) {
+				builder.writeAll(writer);
+			}
+		}
+
+		assertEquals(inMemory(text), spilled.toString("UTF-8"));
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	public void runsStayLargeWhenTheTableOutgrowsTheBudget() throws IOException {
+		Random random = new Random(23);
+		StringBuilder text = new StringBuilder();
+		int tokens = 0;
+		for (int line = 0; line < 16000; line++) {
+			for (int i = 0; i < 8; i++, tokens++) {
+				text.append('w').append(random.nextInt(100000)).append(' ');
+			}
+			text.append('\n');
+		}
+
+		//A structure sized for the vocabulary has a hash table larger than the budget before any term is added
+		ConcordanceDataStructure cds = new ConcordanceDataStructure(1 << 20);
+		long budget = 1 << 20;
+		assertTrue(cds.getStructureBytes() > budget);
+		try (ExternalConcordanceBuilder builder = new ExternalConcordanceBuilder(cds, budget, directory)) {
+			tokenize(text.toString(), builder);
+
+			//Spilling at every check would leave a run per CHECK_INTERVAL terms
+			assertTrue(builder.getRunCount() > 0);
+			assertTrue(builder.getRunCount() <= tokens / ExternalConcordanceBuilder.CHECK_INTERVAL / 2,
+					"runs: " + builder.getRunCount());
+		}
+	}
+
+	@Test
+	public void managerWithABudgetWritesTheSameFile() throws IOException {
+		File input = new File(directory, "input.txt");
+		String text = ConcordanceIndexFileTest.text(new Random(22), 8000);
+		Files.write(input.toPath(), text.getBytes(Charset.defaultCharset()));
+		File expected = new File(directory, "expected.txt"), actual = new File(directory, "actual.txt");
+		File spillDirectory = new File(directory, "runs");
+		assertTrue(spillDirectory.mkdir());
+
+		for (boolean memoryMapped : new boolean[] {false, true}) {
+			ConcordanceDataManager manager = new ConcordanceDataManager();
+			manager.setMemoryMapped(memoryMapped);
+			assertTrue(manager.createConcordanceFile(input, expected));
+
+			manager.setHeapBudget(1 << 14);
+			manager.setSpillDirectory(spillDirectory);
+			assertTrue(manager.createConcordanceFile(input, actual));
+
+			assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+			assertEquals(0, spillDirectory.list().length);
+		}
+	}
+
+	/**
+	 * Write the concordance of a text built wholly in memory
+	 * @param text the text
+	 * @return the concordance, as writeAll writes it in UTF-8
+	 */
+	private static String inMemory(String text) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ConcordanceWriter writer = new ConcordanceWriter(bytes, StandardCharsets.UTF_8)) {
+			ConcordanceIndexFileTest.build(text).writeAll(writer);
+		}
+		return bytes.toString("UTF-8");
+	}
+
+	/**
+	 * Tokenize a text into a sink, numbering lines from 1
+	 * @param text the text
+	 * @param sink the sink receiving the terms
+	 */
+	static void tokenize(String text, ConcordanceTermSink sink) {
+		ConcordanceTokenizer tokenizer = new ConcordanceTokenizer(sink);
+		tokenizer.tokenize(text, 0, text.length());
+		tokenizer.finish();
+	}
+
+}
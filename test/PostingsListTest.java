@@ -0,0 +1,194 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests PostingsList: sorted unique lines, occurrence counts, freezing, and the variable-length encoding
+ */
+public class PostingsListTest {
+
+	//Lines that exercise every encoded gap size, including the largest int
+	private static final int[] LINES = {0, 1, 127, 128, 300, 16383, 16384, 1 << 21, 1 << 28, Integer.MAX_VALUE};
+
+	@Test
+	public void linesStaySortedAndUnique() {
+		PostingsList list = new PostingsList();
+		int[] added = {5, 3, 5, 9, 1, 3, 9, 12, 7};
+		for (int line : added) {
+			list.add(line);
+		}
+
+		assertArrayEquals(new int[] {1, 3, 5, 7, 9, 12}, list.toArray());
+		assertEquals(6, list.size());
+		assertEquals(added.length, list.getOccurrenceCount());
+	}
+
+	@Test
+	public void freezeKeepsTheLines() {
+		Random random = new Random(6);
+		PostingsList list = new PostingsList();
+		for (int i = 0; i < 5000; i++) {
+			list.add(random.nextInt(1 << 20));
+		}
+		int[] lines = list.toArray();
+		long occurrences = list.getOccurrenceCount();
+		int encodedSize = list.encodedSize();
+
+		list.freeze();
+		assertTrue(list.isFrozen());
+		assertEquals(encodedSize, list.getByteSize());
+		assertEquals(encodedSize, list.encodedSize());
+		assertArrayEquals(lines, list.toArray());
+		assertEquals(lines.length, list.size());
+		assertEquals(occurrences, list.getOccurrenceCount());
+
+		//Every way of reading a frozen list agrees with the unfrozen lines
+		int[] copied = new int[lines.length + 2];
+		assertEquals(lines.length, list.copyTo(copied, 1));
+		for (int i = 0; i < lines.length; i++) {
+			assertEquals(lines[i], copied[i + 1]);
+		}
+		ArrayList<Integer> visited = new ArrayList<>();
+		list.forEachLine(visited::add);
+		assertEquals(lines.length, visited.size());
+		for (int i = 0; i < lines.length; i++) {
+			assertEquals(lines[i], (int) visited.get(i));
+		}
+	}
+
+	@Test
+	public void addingToAFrozenListThawsIt() {
+		PostingsList list = new PostingsList();
+		list.add(2);
+		list.add(10);
+		list.freeze();
+		list.add(6);
+		list.add(10);
+
+		assertFalse(list.isFrozen());
+		assertArrayEquals(new int[] {2, 6, 10}, list.toArray());
+		assertEquals(4, list.getOccurrenceCount());
+	}
+
+	@Test
+	public void appendToMatchesTheUnfrozenText() {
+		PostingsList list = new PostingsList();
+		for (int line : LINES) {
+			list.add(line);
+		}
+		StringBuilder unfrozen = new StringBuilder();
+		list.appendTo(unfrozen);
+		list.freeze();
+		StringBuilder frozen = new StringBuilder();
+		list.appendTo(frozen);
+
+		assertEquals(unfrozen.toString(), frozen.toString());
+		assertTrue(frozen.toString().startsWith("0, 1, 127, 128"));
+	}
+
+	@Test
+	public void encodedLinesRoundTrip() throws IOException {
+		PostingsList list = new PostingsList();
+		for (int line : LINES) {
+			list.add(line);
+		}
+
+		//The same bytes are written before and after freezing, and decode back to the lines
+		for (int pass = 0; pass < 2; pass++) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			list.writeEncoded(new DataOutputStream(bytes));
+			assertEquals(list.encodedSize(), bytes.size());
+
+			int[] decoded = new int[LINES.length + 1];
+			int end = PostingsList.decode(ByteBuffer.wrap(bytes.toByteArray()), 0, LINES.length, decoded, 1);
+			assertEquals(bytes.size(), end);
+			for (int i = 0; i < LINES.length; i++) {
+				assertEquals(LINES[i], decoded[i + 1]);
+			}
+			list.freeze();
+		}
+	}
+
+	@Test
+	public void varIntsRoundTrip() throws IOException {
+		int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+		int[] sizes = {1, 1, 1, 2, 2, 3, 5, 5, 5};
+		long[] longValues = {0, 127, 128, 1L << 35, Long.MAX_VALUE, -1};
+		int[] longSizes = {1, 1, 2, 6, 9, 10};
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(sizes[i], PostingsList.varIntSize(values[i]));
+			PostingsList.writeVarInt(out, values[i]);
+		}
+		for (int i = 0; i < longValues.length; i++) {
+			assertEquals(longSizes[i], PostingsList.varLongSize(longValues[i]));
+			PostingsList.writeVarLong(out, longValues[i]);
+		}
+
+		//Read the values back from a stream, a buffer and a byte array
+		byte[] encoded = bytes.toByteArray();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+		ByteBuffer scratch = ByteBuffer.allocate(PostingsList.MAX_VAR_LONG_SIZE);
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		int position = 0;
+		for (int value : values) {
+			assertEquals(value, PostingsList.readVarInt(in, scratch));
+			assertEquals(value, PostingsList.readVarInt(buffer, position));
+			assertEquals(value, PostingsList.readVarInt(encoded, position));
+			position += PostingsList.varIntSize(value);
+		}
+		for (long value : longValues) {
+			assertEquals(value, PostingsList.readVarLong(in, scratch));
+			assertEquals(value, PostingsList.readVarLong(buffer, position));
+			position += PostingsList.varLongSize(value);
+		}
+		assertEquals(encoded.length, position);
+	}
+
+	@Test
+	public void varIntsWrittenToAnArrayMatchTheStream() throws IOException {
+		byte[] dest = new byte[PostingsList.MAX_VAR_INT_SIZE];
+		for (int value : LINES) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			PostingsList.writeVarInt(new DataOutputStream(bytes), value);
+			int end = PostingsList.writeVarInt(dest, 0, value);
+			assertEquals(bytes.size(), end);
+			for (int i = 0; i < end; i++) {
+				assertEquals(bytes.toByteArray()[i], dest[i]);
+			}
+		}
+	}
+
+	@Test
+	public void addAllKeepsOccurrenceCounts() {
+		PostingsList first = new PostingsList(), second = new PostingsList();
+		first.add(1);
+		first.add(1);
+		first.add(4);
+		second.add(1);
+		second.add(2);
+		second.add(2);
+		second.addOccurrences(Integer.MAX_VALUE);
+
+		first.addAll(second, 2);
+		assertArrayEquals(new int[] {1, 3, 4}, first.toArray());
+		assertEquals(3 + 3 + (long) Integer.MAX_VALUE, first.getOccurrenceCount());
+
+		//Lines that all follow the existing ones are appended in one pass
+		first.addAll(second, 10);
+		assertArrayEquals(new int[] {1, 3, 4, 11, 12}, first.toArray());
+		assertEquals(6 + 2L * Integer.MAX_VALUE + 3, first.getOccurrenceCount());
+	}
+
+}
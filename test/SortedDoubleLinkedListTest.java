@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the bulk operations of SortedDoubleLinkedList against adding the same items one at a time
+ */
+public class SortedDoubleLinkedListTest {
+
+	@Test
+	public void addAllMatchesAddingOneAtATime() {
+		Random random = new Random(23);
+		for (int round = 0; round < 50; round++) {
+			SortedDoubleLinkedList<String> bulk = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+			SortedDoubleLinkedList<String> single = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+			int tag = 0;
+			for (int i = random.nextInt(20); i > 0; i--) {
+				String item = SortedSkipListTest.item(random.nextInt(10), tag++);
+				bulk.add(item);
+				single.add(item);
+			}
+
+			ArrayList<String> batch = new ArrayList<>();
+			for (int i = random.nextInt(20); i > 0; i--) {
+				String item = SortedSkipListTest.item(random.nextInt(10), tag++);
+				batch.add(item);
+				single.add(item);
+			}
+			bulk.addAll(batch);
+
+			assertLinked(single.toArrayList(), bulk);
+		}
+	}
+
+	@Test
+	public void mergeFromMatchesAddingOneAtATime() {
+		Random random = new Random(22);
+		for (int round = 0; round < 50; round++) {
+			SortedDoubleLinkedList<String> merged = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+			SortedDoubleLinkedList<String> other = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+			SortedDoubleLinkedList<String> single = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+			int tag = 0;
+			for (int i = random.nextInt(20); i > 0; i--) {
+				String item = SortedSkipListTest.item(random.nextInt(10), tag++);
+				merged.add(item);
+				single.add(item);
+			}
+			for (int i = random.nextInt(20); i > 0; i--) {
+				String item = SortedSkipListTest.item(random.nextInt(10), tag++);
+				other.add(item);
+				single.add(item);
+			}
+			merged.mergeFrom(other);
+
+			assertLinked(single.toArrayList(), merged);
+			assertEquals(0, other.getSize());
+			assertNull(other.getFirst());
+
+			//The emptied list can be used again
+			other.add("x#1");
+			assertEquals("[x#1]", other.toArrayList().toString());
+		}
+	}
+
+	@Test
+	public void mergeFromItselfIsRejected() {
+		SortedDoubleLinkedList<String> list = new SortedDoubleLinkedList<>(SortedSkipListTest.KEY_ORDER);
+		list.add("a#1");
+		assertThrows(IllegalArgumentException.class, () -> list.mergeFrom(list));
+	}
+
+	/**
+	 * Check that a list holds the expected items, linked correctly in both directions
+	 * @param expected the items in order
+	 * @param list the list
+	 */
+	private static void assertLinked(ArrayList<String> expected, SortedDoubleLinkedList<String> list) {
+		assertEquals(expected, list.toArrayList());
+		assertEquals(expected.size(), list.getSize());
+		if (expected.isEmpty()) return;
+
+		assertEquals(expected.get(0), list.getFirst());
+		assertEquals(expected.get(expected.size() - 1), list.getLast());
+
+		//Emptying the list from the back walks the previous links
+		for (int i = expected.size() - 1; i >= 0; i--) {
+			assertEquals(expected.get(i), list.retrieveLastElement());
+		}
+		assertEquals(0, list.getSize());
+	}
+
+}
@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests SortedSkipList against SortedDoubleLinkedList, which it replaces
+ */
+public class SortedSkipListTest {
+
+	//Orders items by their key alone, the part before '#', so items with equal keys keep the order they were added
+	static final Comparator<String> KEY_ORDER =
+			(s1, s2) -> s1.substring(0, s1.indexOf('#')).compareTo(s2.substring(0, s2.indexOf('#')));
+
+	@Test
+	public void randomOperationsMatchSortedDoubleLinkedList() {
+		Random random = new Random(22);
+		SortedSkipList<String> skipList = new SortedSkipList<>(KEY_ORDER);
+		SortedDoubleLinkedList<String> linkedList = new SortedDoubleLinkedList<>(KEY_ORDER);
+		ArrayList<String> added = new ArrayList<>();
+
+		for (int i = 0; i < 5000; i++) {
+			int operation = random.nextInt(10);
+
+			//Keep both lists above one item, as SortedDoubleLinkedList cannot remove its only item
+			if (operation < 6 || linkedList.getSize() < 2) {
+				String item = item(random.nextInt(200), i);
+				skipList.add(item);
+				linkedList.add(item);
+				added.add(item);
+			}
+			else if (operation < 8) {
+				String item = added.get(random.nextInt(added.size()));
+				skipList.remove(item, String::compareTo);
+				linkedList.remove(item, String::compareTo);
+			}
+			else if (operation == 8) {
+				assertEquals(linkedList.retrieveFirstElement(), skipList.retrieveFirstElement());
+			}
+			else {
+				assertEquals(linkedList.retrieveLastElement(), skipList.retrieveLastElement());
+			}
+			assertEquals(linkedList.getSize(), skipList.getSize());
+		}
+
+		ArrayList<String> expected = linkedList.toArrayList();
+		assertEquals(expected, skipList.toArrayList());
+		assertEquals(expected.get(0), skipList.getFirst());
+		assertEquals(expected.get(expected.size() - 1), skipList.getLast());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), skipList.get(i));
+		}
+	}
+
+	@Test
+	public void equalItemsKeepTheirOrder() {
+		SortedSkipList<String> list = new SortedSkipList<>(KEY_ORDER);
+		list.add("b#1").add("a#2").add("b#3").add("a#4").add("b#5");
+
+		assertEquals("[a#2, a#4, b#1, b#3, b#5]", list.toArrayList().toString());
+
+		//Removing by a Comparator that matches the whole item finds it among the items with the same key
+		list.remove("b#3", String::compareTo);
+		assertEquals("[a#2, a#4, b#1, b#5]", list.toArrayList().toString());
+
+		//A Comparator that disagrees with the list's order still finds the item
+		list.remove("z#5", (s1, s2) -> s1.substring(2).compareTo(s2.substring(2)));
+		assertEquals("[a#2, a#4, b#1]", list.toArrayList().toString());
+	}
+
+	@Test
+	public void iteratesInBothDirections() {
+		SortedSkipList<String> list = new SortedSkipList<>(KEY_ORDER);
+		for (int i = 0; i < 100; i++) {
+			list.add(item((i * 37) % 100, i));
+		}
+
+		SortedSkipList<String>.Iterator iterator = list.iterator();
+		ArrayList<String> forwards = new ArrayList<>();
+		while (iterator.hasNext()) {
+			forwards.add(iterator.next());
+		}
+		assertEquals(list.toArrayList(), forwards);
+		for (int i = forwards.size() - 1; i >= 0; i--) {
+			assertEquals(i, iterator.previousIndex());
+			assertEquals(forwards.get(i), iterator.previous());
+		}
+		assertFalse(iterator.hasPrevious());
+	}
+
+	@Test
+	public void getRejectsPositionsOutsideTheList() {
+		SortedSkipList<String> list = new SortedSkipList<>("a#1", KEY_ORDER);
+		assertEquals("a#1", list.get(0));
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+		assertEquals("a#1", list.retrieveLastElement());
+		assertNull(list.retrieveFirstElement());
+		assertNull(list.getFirst());
+	}
+
+	/**
+	 * Make an item with a key and a tag telling it apart from other items with the same key
+	 * @param key the key the lists sort by
+	 * @param tag the tag
+	 * @return the item
+	 */
+	static String item(int key, int tag) {
+		return String.format("%03d#%d", key, tag);
+	}
+
+}
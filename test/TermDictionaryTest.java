@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the open-addressing hash table of TermDictionary: growth, linear probing and the term arena
+ */
+public class TermDictionaryTest {
+
+	//Sends every term to slot 0, so each term is found by probing past all the terms added before it
+	private static final TermHashFunction CONSTANT_HASH = (chars, start, length) -> 0;
+
+	@Test
+	public void resizeKeepsEveryTerm() {
+		TermDictionary dictionary = new TermDictionary(4);
+		int count = 20000;
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, dictionary.add("term" + i));
+		}
+
+		assertEquals(count, dictionary.size());
+		assertTrue(dictionary.getResizeCount() > 0);
+		assertEquals(1, Integer.bitCount(dictionary.getTableSize()));
+		assertTrue(dictionary.size() <= dictionary.getTableSize() * 0.75);
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, dictionary.find("term" + i));
+			assertEquals("term" + i, dictionary.getTerm(i));
+		}
+		assertEquals(-1, dictionary.find("term" + count));
+	}
+
+	@Test
+	public void addingAgainReturnsTheSameId() {
+		TermDictionary dictionary = new TermDictionary(16);
+		char[] buffer = "xxhelloxx".toCharArray();
+		int id = dictionary.add("hello");
+		assertEquals(id, dictionary.add(buffer, 2, 5));
+		assertEquals(1, dictionary.size());
+		assertEquals(1, dictionary.add("hell"));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void collidingTermsAreProbedInOrder() {
+		TermDictionary dictionary = new TermDictionary(8, CONSTANT_HASH);
+		int count = 100;
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, dictionary.add("w" + i));
+		}
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, dictionary.find("w" + i));
+		}
+		assertEquals(-1, dictionary.find("w" + count));
+
+		//After each resize the terms are reinserted in id order, so term i sits i slots past its home slot
+		long[] histogram = dictionary.probeLengthHistogram(count);
+		long[] expected = new long[count];
+		Arrays.fill(expected, 1);
+		assertArrayEquals(expected, histogram);
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, dictionary.idAt(i));
+		}
+	}
+
+	@Test
+	public void probesWrapAroundTheEndOfTheTable() {
+		int tableSize = 16;
+		TermHashFunction lastSlot = (chars, start, length) -> tableSize - 1;
+		TermDictionary dictionary = new TermDictionary(tableSize, lastSlot);
+		for (int i = 0; i < 4; i++) {
+			dictionary.add("w" + i);
+		}
+
+		assertEquals(tableSize, dictionary.getTableSize());
+		assertEquals(0, dictionary.idAt(tableSize - 1));
+		assertEquals(1, dictionary.idAt(0));
+		assertEquals(3, dictionary.idAt(2));
+		assertEquals(3, dictionary.find("w3"));
+		assertArrayEquals(new long[] {1, 1, 1, 1}, dictionary.probeLengthHistogram(4));
+		assertArrayEquals(new long[] {1, 3}, dictionary.probeLengthHistogram(2));
+	}
+
+	@Test
+	public void addFromAnotherDictionary() {
+		TermDictionary first = new TermDictionary(4, StandardTermHash.MURMUR3);
+		TermDictionary second = new TermDictionary(4, StandardTermHash.XXHASH);
+		first.add("alpha");
+		first.add("beta");
+		second.add("beta");
+
+		assertEquals(1, second.add(first, 0));
+		assertEquals(0, second.add(first, 1));
+		assertEquals(0, second.find("beta"));
+		assertEquals(1, second.find("alpha"));
+		assertEquals(StandardTermHash.XXHASH.hash("alpha"), second.getHash(1));
+	}
+
+	@Test
+	public void tableSizeIsRoundedUpToAPowerOfTwo() {
+		assertEquals(1, TermDictionary.tableSizeFor(0));
+		assertEquals(1, TermDictionary.tableSizeFor(1));
+		assertEquals(2, TermDictionary.tableSizeFor(2));
+		assertEquals(4, TermDictionary.tableSizeFor(3));
+		assertEquals(1024, TermDictionary.tableSizeFor(1000));
+		assertEquals(1 << 30, TermDictionary.tableSizeFor(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void sortedIdsFollowTheTerms() {
+		TermDictionary dictionary = new TermDictionary(4);
+		String[] terms = {"pear", "apple", "fig", "apples", "banana"};
+		for (String term : terms) {
+			dictionary.add(term);
+		}
+
+		String[] sorted = terms.clone();
+		Arrays.sort(sorted);
+		int[] ids = dictionary.sortedIds();
+		for (int i = 0; i < sorted.length; i++) {
+			assertEquals(sorted[i], dictionary.getTerm(ids[i]));
+		}
+	}
+
+}